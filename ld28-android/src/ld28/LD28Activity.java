@@ -19,8 +19,13 @@ public class LD28Activity extends AndroidApplication {
 
 		// To start an Android game just tell the kernel about your app so that it can switch between your game's
 		// states, then start it all through initialize() just as you would any other LibGDX Android game.
-		StateSelector gameStateSelector = new App();
+		App app = new App();
+		app.setSimulationThreaded(Runtime.getRuntime().availableProcessors() > 1);
+		StateSelector gameStateSelector = app;
 		Kernel kernel = new Kernel(gameStateSelector);
+		kernel.setFixedTimestep(60, 5);
+		kernel.setQualityLevels(Quality.LEVELS);
+		kernel.setWarmUp(new WarmUp());
 		initialize(kernel, cfg);
     }
 }
\ No newline at end of file
@@ -17,8 +17,16 @@ public class LD28 {
 
 		// To start a desktop game just tell the kernel about your app so that it can switch between your game's
 		// states, then start it all through LwglApplication just as you would any other LibGDX desktop game.
-		StateSelector gameStateSelector = new App();
+		App app = new App();
+		app.setSimulationThreaded(Runtime.getRuntime().availableProcessors() > 1);
+		StateSelector gameStateSelector = app;
 		Kernel kernel = new Kernel(gameStateSelector);
+		kernel.setFixedTimestep(60, 5);
+		kernel.setQualityLevels(Quality.LEVELS);
+		// Run with -Dld28.warmup=false to see what the first race is like without warming up.
+		if (!"false".equals(System.getProperty("ld28.warmup"))) {
+			kernel.setWarmUp(new WarmUp());
+		}
 		new LwjglApplication(kernel, cfg);
 	}
 }
@@ -5,17 +5,12 @@ import ldtk.StateSelector;
 
 public class App implements StateSelector {
 
-	/**
-	 * An event broker, available to all classes in the application.
-	 */
-	public static Broker broker;
-	
 	private Playing playing;
 	private Menu menu;
 	private State state;
+	private boolean isStarted;
 
 	public App() {
-		broker = new Broker();
 		playing = new Playing(this);
 		menu = new Menu(this);
 		state = menu;
@@ -23,9 +18,25 @@ public class App implements StateSelector {
 
 	@Override
 	public State select() {
+		// If the app was killed in the middle of a race then go straight back to it.
+		if (!isStarted) {
+			isStarted = true;
+			if (playing.resumeSavedRace()) {
+				state = playing;
+			}
+		}
 		return state;
 	}
 	
+	/**
+	 * Chooses whether races tick on their own thread, which is worth doing when there is more than one core.
+	 * 
+	 * @param isSimulationThreaded true to tick races on their own thread.
+	 */
+	public void setSimulationThreaded(boolean isSimulationThreaded) {
+		playing.setSimulationThreaded(isSimulationThreaded);
+	}
+
 	public void requestPlaying(boolean isTwoPlayer) {
 		if (state == menu) {
 			playing.setTwoPlayer(isTwoPlayer);
@@ -33,6 +44,21 @@ public class App implements StateSelector {
 		}
 	}
 	
+	/**
+	 * Starts loading the last race in the background so that it is ready to watch.
+	 * 
+	 * @param owner the state that wants it.
+	 */
+	public void prefetchReplay(State owner) {
+		playing.prefetchReplay(owner);
+	}
+
+	public void requestReplay() {
+		if (state == menu && playing.watchReplay()) {
+			state = playing;
+		}
+	}
+
 	public void requestMenu() {
 		if (state == playing) {
 			state = menu;
@@ -1,196 +1,343 @@
 package ld28;
 
-import java.util.List;
-
-import ld28.World.PlayerLoseEvent;
-import ld28.World.PlayerWinEvent;
-import ldtk.Kernel;
-
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Polygon;
-import com.badlogic.gdx.math.Vector2;
 
+/**
+ * A handle onto one car's row in a {@link CarTable}. The table holds the car's state and moves it each tick; the handle
+ * holds the behaviour of a single car.
+ * <p>
+ * Cars are pooled by the World and spawned onto a new row for each level, so they must not be held on to from one
+ * level to the next. Use {@link #handle()} to refer to a car in a way that can be checked.
+ */
 class Car {
-	private static final String TAG = "Car";
-	
 	protected static final float MAX_SLOT = 2;
-	private static final float HALF_WIDTH = 12;
-	private static final float HALF_HEIGHT = 6;
+	static final float HALF_WIDTH = 12;
+	static final float HALF_HEIGHT = 6;
+	/**
+	 * The radius of the smallest circle around the car's centre that contains the whole car.
+	 */
+	static final float BOUNDING_RADIUS = (float) Math.sqrt(HALF_WIDTH * HALF_WIDTH + HALF_HEIGHT * HALF_HEIGHT);
 
 	protected static final float LANE_WIDTH = 16.0f;
 	
-	protected TrackBuilder track;
-	protected float lane;
-	protected float distance;
-	private Vector2 position;
-	private float angle;
-	protected float speed;
-	private float maxSpeed;
-	private int layer;
-	private int adjoiningLayer;
-	protected int pieceIndex;
-	private Polygon poly;
-	private float accel;
-	protected int currentSlot;
-	protected float direction = 1.0f;
-	protected boolean isRaceOver;
-
-	public Car(TrackBuilder track, int pieceIndex, int currentSlot, float speed) {
-		this.currentSlot = currentSlot;
-		this.track = track;
-		this.lane = currentSlot * LANE_WIDTH;
-		this.distance = 0;
-		this.speed = 0;
-		this.accel = 100.0f;
-		this.maxSpeed = speed;
-		this.pieceIndex = pieceIndex;
-		float[] verts = new float[] {
-			-HALF_WIDTH,  HALF_HEIGHT,
-			-HALF_WIDTH, -HALF_HEIGHT,
-			 HALF_WIDTH, -HALF_HEIGHT,
-			 HALF_WIDTH,  HALF_HEIGHT,
-		};
-		poly = new Polygon(verts); 
-		position = new Vector2();
-		updatePosition();
-		App.broker.subscribe(PlayerWinEvent.class, new Subscriber() {
-			@Override
-			public void onEvent(Event event) {
-				// Prevent ourselves from receiving this event type again.
-				App.broker.unsubscribe(PlayerWinEvent.class, this);
-				Gdx.app.log(TAG, "PlayerWinEvent");
-				isRaceOver = true;
-				maxSpeed = 200;
-			}
-		});
-		App.broker.subscribe(PlayerLoseEvent.class, new Subscriber() {
-			@Override
-			public void onEvent(Event event) {
-				// Prevent ourselves from receiving this event type again.
-				App.broker.unsubscribe(PlayerWinEvent.class, this);
-				Gdx.app.log(TAG, "PlayerLoseEvent");
-				isRaceOver = true;
-				maxSpeed = 200;
-			}
-		});
+	protected final Context context;
+	protected final CarTable table;
+	protected int row;
+	int racingIndex;
+
+	public Car(CarTable table, Context context) {
+		this.context = context;
+		this.table = table;
 	}
-	
-	public void update() {
-		if (!isRaceOver) {
-			speed = Math.min(maxSpeed, speed + Kernel.time.delta * accel);
-		}
-		else {
-			speed = speed + (maxSpeed - speed) * Kernel.time.delta;
-		}
-		distance += Kernel.time.delta * speed;
-		updatePosition();
+
+	/**
+	 * Puts the car at the start of a track piece on the table's current level.
+	 * 
+	 * @param pieceIndex the piece that the car starts on.
+	 * @param currentSlot the car's lane, from -MAX_SLOT to MAX_SLOT.
+	 * @param speed the car's top speed.
+	 */
+	public void spawn(int pieceIndex, int currentSlot, float speed) {
+		row = table.add(this, pieceIndex, currentSlot, speed);
 	}
-	
-	private void updatePosition() {
-		List<TrackPiece> pieces = track.pieces();
-		TrackPiece piece = pieces.get(pieceIndex);
-		while (distance >= piece.length(lane)) {
-			distance -= piece.length(lane);
-			pieceIndex = (pieceIndex + 1) % pieces.size();
-			piece = pieces.get(pieceIndex);
-		}
-		position.set(piece.positionAt(distance, lane));
-		angle = piece.angleAt(distance, lane);
-		layer = piece.layer();
-		calculateAdjoiningLayer(pieces, piece);
-		poly.setPosition(position.x, position.y);
-		poly.setRotation(MathUtils.radDeg * angle);
-	}
-
-	private void calculateAdjoiningLayer(List<TrackPiece> pieces, TrackPiece piece) {
-		if (distance < HALF_WIDTH) {
-			int n = pieceIndex - 1;
-			if (n < 0) {
-				n = pieces.size() - 1;
-			}
-			TrackPiece adjoiningPiece = pieces.get(n);
-			adjoiningLayer = adjoiningPiece.layer();
-		}
-		else if (distance > piece.length(lane) - HALF_WIDTH) {
-			int n = (pieceIndex + 1) % pieces.size();
-			TrackPiece adjoiningPiece = pieces.get(n);
-			adjoiningLayer = adjoiningPiece.layer();
-		}
-		else {
-			adjoiningLayer = layer;
-		}
+
+	/**
+	 * Returns a handle to this car that stops being valid when the level ends.
+	 * 
+	 * @return the handle.
+	 */
+	public int handle() {
+		return table.handle(row);
 	}
-	
+
+	/**
+	 * Called by the World when the race has been won or lost. The car slows to a cruise and stops changing lanes.
+	 */
+	public void raceOver() {
+		table.isRaceOver[row] = true;
+		table.maxSpeed[row] = 200;
+	}
+
+	/**
+	 * Called by the World before the table moves the cars each tick, for cars that steer themselves.
+	 */
+	public void beforeUpdate() {
+	}
+
+	/**
+	 * Called by the World after the table has moved the cars each tick.
+	 */
+	public void afterUpdate() {
+	}
+
+	/**
+	 * Returns true if the car is still racing, so the table moves it each tick. Only cars that are racing take part
+	 * in collisions.
+	 * 
+	 * @return true if the car is racing.
+	 */
+	public boolean isRacing() {
+		return table.isRacing[row];
+	}
+
+	public void setRacing(boolean isRacing) {
+		table.isRacing[row] = isRacing;
+	}
+
+	protected void updatePosition() {
+		table.updatePosition(row);
+	}
+
+	protected void savePreviousPose() {
+		table.savePreviousPose(row);
+	}
+
+	public int pieceIndex() {
+		return table.pieceIndex[row];
+	}
+
+	public int currentSlot() {
+		return table.currentSlot[row];
+	}
+
+	public float lane() {
+		return table.lane[row];
+	}
+
+	public float distance() {
+		return table.distance[row];
+	}
+
+	/**
+	 * Returns the piece that the car was on before the table last moved it.
+	 * 
+	 * @return the piece's index.
+	 */
+	public int prevPieceIndex() {
+		return table.prevPieceIndex[row];
+	}
+
+	/**
+	 * Returns how far along its piece the car was before the table last moved it, measured along the lane that it
+	 * was moved in.
+	 * 
+	 * @return the distance.
+	 */
+	public float prevDistance() {
+		return table.prevDistance[row];
+	}
+
+	public float speed() {
+		return table.speed[row];
+	}
+
+	public float direction() {
+		return table.direction[row];
+	}
+
 	public float x() {
-		return position.x;
+		return table.x[row];
 	}
 	
 	public float y() {
-		return position.y;
+		return table.y[row];
 	}
 	
 	public float angle() {
-		return angle;
+		return table.angle[row];
 	}
 	
-	public int layer() {
-		return layer;
+	/**
+	 * Returns the car's x coordinate interpolated between the previous tick and the current tick.
+	 * 
+	 * @param alpha how far to interpolate, from 0 (the previous tick) to 1 (the current tick).
+	 * @return the interpolated x coordinate.
+	 */
+	public float x(float alpha) {
+		float prevX = table.prevX[row];
+		return prevX + (table.x[row] - prevX) * alpha;
 	}
-	
-	public Polygon poly() {
-		return poly;
+
+	/**
+	 * Returns the car's y coordinate interpolated between the previous tick and the current tick.
+	 * 
+	 * @param alpha how far to interpolate, from 0 (the previous tick) to 1 (the current tick).
+	 * @return the interpolated y coordinate.
+	 */
+	public float y(float alpha) {
+		float prevY = table.prevY[row];
+		return prevY + (table.y[row] - prevY) * alpha;
+	}
+
+	/**
+	 * Returns the car's angle interpolated between the previous tick and the current tick, taking the shortest way
+	 * around the circle.
+	 * 
+	 * @param alpha how far to interpolate, from 0 (the previous tick) to 1 (the current tick).
+	 * @return the interpolated angle in radians.
+	 */
+	public float angle(float alpha) {
+		float prevAngle = table.prevAngle[row];
+		float delta = table.angle[row] - prevAngle;
+		if (delta >= MathUtils.PI) {
+			delta -= MathUtils.PI2;
+		}
+		else if (delta < -MathUtils.PI) {
+			delta += MathUtils.PI2;
+		}
+		return prevAngle + delta * alpha;
+	}
+
+	public int layer() {
+		return table.layer[row];
 	}
 	
 	public int hit(Car other) {
-		// Throw out non-collisions.
-		if (!Polys.hit(poly, other.poly) || (Math.abs(pieceIndex - other.pieceIndex) > 1)) {
-			return 0;
-		}
+		return touches(other) ? whoShunted(other) : 0;
+	}
 
-		// Now we know we had a collision.
+	/**
+	 * Tests if this car is touching another. This only looks at where the cars are, which collision responses never
+	 * change, so it can be done for many pairs of cars at once on different threads.
+	 * 
+	 * @param other the other car.
+	 * @return true if the cars are touching.
+	 */
+	public boolean touches(Car other) {
+		// Throw out non-collisions, cheapest test first.
+		return Math.abs(table.pieceIndex[row] - table.pieceIndex[other.row]) <= 1
+				&& CarShape.hit(table, row, other.row);
+	}
 
-		int numPieces = track.pieces().size();
-		if (pieceIndex == (other.pieceIndex + 1) % numPieces) {
+	/**
+	 * Works out which of two touching cars ran into the other.
+	 * 
+	 * @param other the other car.
+	 * @return 1 if the other car ran into this one, or -1 if this car ran into the other one.
+	 */
+	public int whoShunted(Car other) {
+		int pieceIndex = table.pieceIndex[row];
+		int otherPieceIndex = table.pieceIndex[other.row];
+		int numPieces = table.track().pieces().size();
+		if (pieceIndex == (otherPieceIndex + 1) % numPieces) {
 			// We're ahead of the other car by one piece, so they shunted us.
 			return 1;
 		}
-		else if ((pieceIndex + 1) % numPieces == other.pieceIndex) {
+		else if ((pieceIndex + 1) % numPieces == otherPieceIndex) {
 			// We're behind the other car by one piece, so we shunted them.
 			return -1;
 		}
 		
 		// We're on the same track piece, so it's all down to distance.
-		return (distance >= other.distance) ? 1: -1;
+		return (table.distance[row] >= table.distance[other.row]) ? 1: -1;
 	}
 	
 	public void setSpeed(float speed) {
-		this.speed = speed;
+		table.speed[row] = speed;
 	}
 	
 	public void onWasRunInto(Car other) {
 	}
 	
 	public void onRanInto(Car other) {
-		speed *= 0.5f;
+		table.speed[row] *= 0.5f;
 		// Change lanes if we're faster than the other car.
-		if (!isRaceOver && other.maxSpeed < maxSpeed) {
+		if (!table.isRaceOver[row] && table.maxSpeed[other.row] < table.maxSpeed[row]) {
+			int currentSlot = table.currentSlot[row];
+			float direction = table.direction[row];
 			if ((currentSlot == MAX_SLOT && direction > 0) || (currentSlot == -MAX_SLOT && direction < 0)) {
 				direction = -direction;
+				table.direction[row] = direction;
 			}
-			currentSlot += direction;
-			float newLane = LANE_WIDTH * currentSlot;
-			TrackPiece piece = piece();
-			distance *= piece.length(newLane) / piece.length(lane);
-			lane = newLane;
+			changeSlot(currentSlot + direction);
 		}
 	}
 
+	/**
+	 * Moves the car into another lane, keeping it the same fraction of the way along its track piece.
+	 * 
+	 * @param slot the new lane, from -MAX_SLOT to MAX_SLOT.
+	 */
+	protected void changeSlot(float slot) {
+		table.currentSlot[row] = (int) slot;
+		float newLane = LANE_WIDTH * table.currentSlot[row];
+		TrackPiece piece = piece();
+		table.distance[row] *= piece.length(newLane) / piece.length(table.lane[row]);
+		table.lane[row] = newLane;
+	}
+
+	/**
+	 * Returns true if the car has crashed out of the race and is no longer on the track.
+	 * 
+	 * @return true if the car has crashed out.
+	 */
+	public boolean isCrashedOut() {
+		return false;
+	}
+
 	public int adjoiningLayer() {
-		return adjoiningLayer;
+		return table.adjoiningLayer[row];
 	}
 	
+	/**
+	 * Mixes this car's state into a hash.
+	 * 
+	 * @param hash the hash so far.
+	 * @return the new hash.
+	 */
+	public long hash(long hash) {
+		hash = StateHash.mix(hash, table.pieceIndex[row]);
+		hash = StateHash.mix(hash, table.currentSlot[row]);
+		hash = StateHash.mix(hash, table.lane[row]);
+		hash = StateHash.mix(hash, table.distance[row]);
+		hash = StateHash.mix(hash, table.speed[row]);
+		return hash;
+	}
+
+	/**
+	 * Saves this car's state into a snapshot.
+	 * 
+	 * @param snapshot the snapshot.
+	 * @param index the car's slot in the snapshot.
+	 */
+	public void save(WorldSnapshot snapshot, int index) {
+		snapshot.pieceIndex[index] = table.pieceIndex[row];
+		snapshot.currentSlot[index] = table.currentSlot[row];
+		snapshot.lane[index] = table.lane[row];
+		snapshot.distance[index] = table.distance[row];
+		snapshot.speed[index] = table.speed[row];
+		snapshot.maxSpeed[index] = table.maxSpeed[row];
+		snapshot.direction[index] = table.direction[row];
+		snapshot.isRaceOver[index] = table.isRaceOver[row];
+		snapshot.prevX[index] = table.prevX[row];
+		snapshot.prevY[index] = table.prevY[row];
+		snapshot.prevAngle[index] = table.prevAngle[row];
+	}
+
+	/**
+	 * Restores this car's state from a snapshot. Everything that can be derived from the car's place on the track,
+	 * such as its position, is recalculated rather than saved.
+	 * 
+	 * @param snapshot the snapshot.
+	 * @param index the car's slot in the snapshot.
+	 */
+	public void restore(WorldSnapshot snapshot, int index) {
+		table.pieceIndex[row] = snapshot.pieceIndex[index];
+		table.currentSlot[row] = snapshot.currentSlot[index];
+		table.lane[row] = snapshot.lane[index];
+		table.distance[row] = snapshot.distance[index];
+		table.speed[row] = snapshot.speed[index];
+		table.maxSpeed[row] = snapshot.maxSpeed[index];
+		table.direction[row] = snapshot.direction[index];
+		table.isRaceOver[row] = snapshot.isRaceOver[index];
+		table.isRacing[row] = snapshot.isRacing[index];
+		updatePosition();
+		table.prevX[row] = snapshot.prevX[index];
+		table.prevY[row] = snapshot.prevY[index];
+		table.prevAngle[row] = snapshot.prevAngle[index];
+	}
+
 	public TrackPiece piece() {
-		return track.pieces().get(pieceIndex);
+		return table.track().pieces().get(table.pieceIndex[row]);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package ld28;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Everything needed to draw the cars for one frame, held in parallel primitive arrays. A frame can be captured from
+ * the live World or decoded from an instant replay, and the renderer draws them both the same way.
+ */
+class CarFrame {
+	public static final int DRONE = 0;
+	public static final int PLAYER_ONE = 1;
+	public static final int PLAYER_TWO = 2;
+	public static final int GHOST = 3;
+
+	public int count;
+	public float[] x;
+	public float[] y;
+	public float[] angle;
+	public int[] layer;
+	public int[] adjoiningLayer;
+	public int[] kind;
+	public float[] direction;
+
+	public CarFrame(int capacity) {
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		layer = new int[capacity];
+		adjoiningLayer = new int[capacity];
+		kind = new int[capacity];
+		direction = new float[capacity];
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Makes sure that the frame can hold at least the given number of cars. This allocates, so call it when a level
+	 * starts rather than every frame.
+	 * 
+	 * @param capacity the number of cars.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			CarFrame bigger = new CarFrame(capacity);
+			bigger.set(this);
+			x = bigger.x;
+			y = bigger.y;
+			angle = bigger.angle;
+			layer = bigger.layer;
+			adjoiningLayer = bigger.adjoiningLayer;
+			kind = bigger.kind;
+			direction = bigger.direction;
+		}
+	}
+
+	/**
+	 * Makes this frame a copy of another.
+	 * 
+	 * @param other the other frame.
+	 */
+	public void set(CarFrame other) {
+		ensureCapacity(other.count);
+		int n = other.count;
+		System.arraycopy(other.x, 0, x, 0, n);
+		System.arraycopy(other.y, 0, y, 0, n);
+		System.arraycopy(other.angle, 0, angle, 0, n);
+		System.arraycopy(other.layer, 0, layer, 0, n);
+		System.arraycopy(other.adjoiningLayer, 0, adjoiningLayer, 0, n);
+		System.arraycopy(other.kind, 0, kind, 0, n);
+		System.arraycopy(other.direction, 0, direction, 0, n);
+		count = n;
+	}
+
+	public void add(int kind, float x, float y, float angle, int layer, int adjoiningLayer, float direction) {
+		int i = count++;
+		this.kind[i] = kind;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.angle[i] = angle;
+		this.layer[i] = layer;
+		this.adjoiningLayer[i] = adjoiningLayer;
+		this.direction[i] = direction;
+	}
+
+	/**
+	 * Makes this frame an interpolation between two frames of the same cars.
+	 * 
+	 * @param from the frame at alpha 0.
+	 * @param to the frame at alpha 1, which also supplies everything that isn't interpolated.
+	 * @param alpha how far to interpolate.
+	 */
+	public void interpolate(CarFrame from, CarFrame to, float alpha) {
+		set(to);
+		for (int i = 0, n = count; i < n; i++) {
+			x[i] = from.x[i] + (to.x[i] - from.x[i]) * alpha;
+			y[i] = from.y[i] + (to.y[i] - from.y[i]) * alpha;
+			float delta = to.angle[i] - from.angle[i];
+			if (delta >= MathUtils.PI) {
+				delta -= MathUtils.PI2;
+			}
+			else if (delta < -MathUtils.PI) {
+				delta += MathUtils.PI2;
+			}
+			angle[i] = from.angle[i] + delta * alpha;
+		}
+	}
+
+	/**
+	 * Captures the cars and the ghost, interpolated between the previous and the current tick.
+	 * 
+	 * @param cars the cars.
+	 * @param ghost the ghost, or null if there isn't one.
+	 * @param alpha how far to interpolate, from 0 (the previous tick) to 1 (the current tick).
+	 */
+	public void capture(List<Car> cars, GhostCar ghost, float alpha) {
+		int n = cars.size();
+		ensureCapacity(n + 1);
+		clear();
+		if (ghost != null) {
+			add(GHOST, ghost.x(alpha), ghost.y(alpha), ghost.angle(alpha), ghost.layer(), ghost.adjoiningLayer(), 0);
+		}
+		for (int i = 0; i < n; i++) {
+			Car car = cars.get(i);
+			add(kindOf(car), car.x(alpha), car.y(alpha), car.angle(alpha), car.layer(), car.adjoiningLayer(),
+					car.direction());
+		}
+	}
+
+	static int kindOf(Car car) {
+		if (car instanceof PlayerCar) {
+			return (((PlayerCar) car).playerNumber() == 1) ? PLAYER_ONE : PLAYER_TWO;
+		}
+		return DRONE;
+	}
+}
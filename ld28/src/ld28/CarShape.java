@@ -0,0 +1,178 @@
+package ld28;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Polygon;
+
+/**
+ * The narrow phase for car collisions. Every car is the same box, so rather than building polygons and running the
+ * general separating axis test over all eight of their edges, this works straight from each car's centre and the
+ * cosine and sine of its angle, which the {@link CarTable} keeps up to date whenever a car moves. Cars whose bounding
+ * circles don't touch are thrown out first. Otherwise only four axes need testing, as opposite edges of a box share
+ * one, and the box's extent along each of them has a closed form.
+ * <p>
+ * The cosine and sine come from libGDX's lookup tables, just as they did for the polygons, so the boxes are exactly
+ * where the polygons were and the two tests agree. The tables look the cosine and sine up at slightly different
+ * angles, so a polygon was really its box scaled by the length of (cos, sin), which can be a few parts in ten thousand
+ * away from 1. The test allows for that scale rather than assuming it away, or cars a fraction of a pixel apart would
+ * touch by one test and not the other.
+ */
+class CarShape {
+	static final float HALF_WIDTH = Car.HALF_WIDTH;
+	static final float HALF_HEIGHT = Car.HALF_HEIGHT;
+	private static final float MAX_DISTANCE = 2 * Car.BOUNDING_RADIUS;
+	// Allows for the scale of the lookup tables' cosine and sine.
+	private static final float MAX_DISTANCE2 = MAX_DISTANCE * MAX_DISTANCE * 1.002f;
+
+	/**
+	 * Returns the cosine of a car's angle, as the polygon test would have worked it out.
+	 *
+	 * @param angle the car's angle in radians.
+	 * @return the cosine.
+	 */
+	static float cos(float angle) {
+		return MathUtils.cosDeg(MathUtils.radDeg * angle);
+	}
+
+	/**
+	 * Returns the sine of a car's angle, as the polygon test would have worked it out.
+	 *
+	 * @param angle the car's angle in radians.
+	 * @return the sine.
+	 */
+	static float sin(float angle) {
+		return MathUtils.sinDeg(MathUtils.radDeg * angle);
+	}
+
+	/**
+	 * Tests if two cars overlap. Cars that are only just touching count as overlapping.
+	 *
+	 * @param table the table that holds the cars.
+	 * @param a one car's row.
+	 * @param b the other car's row.
+	 * @return true if the cars overlap.
+	 */
+	static boolean hit(CarTable table, int a, int b) {
+		return hit(table.x[a], table.y[a], table.cos[a], table.sin[a], table.x[b], table.y[b], table.cos[b],
+				table.sin[b]);
+	}
+
+	/**
+	 * Tests if two car-sized boxes overlap.
+	 *
+	 * @param ax the x coordinate of the first box's centre.
+	 * @param ay the y coordinate of the first box's centre.
+	 * @param aCos the cosine of the first box's angle.
+	 * @param aSin the sine of the first box's angle.
+	 * @param bx the x coordinate of the second box's centre.
+	 * @param by the y coordinate of the second box's centre.
+	 * @param bCos the cosine of the second box's angle.
+	 * @param bSin the sine of the second box's angle.
+	 * @return true if the boxes overlap.
+	 */
+	static boolean hit(float ax, float ay, float aCos, float aSin, float bx, float by, float bCos, float bSin) {
+		float tx = bx - ax;
+		float ty = by - ay;
+		if (tx * tx + ty * ty > MAX_DISTANCE2) {
+			return false;
+		}
+
+		// The axes are (cos, sin) and (-sin, cos) without normalising them, which scales every distance along an axis by
+		// that axis's length. Each box's own extent along its axes is scaled twice over, once for its size and once for
+		// the axis. How far each box's axes lean on the other's comes out scaled by both lengths, just as it should.
+		float aScale = aCos * aCos + aSin * aSin;
+		float bScale = bCos * bCos + bSin * bSin;
+		float c = Math.abs(aCos * bCos + aSin * bSin);
+		float s = Math.abs(aSin * bCos - aCos * bSin);
+		float leanWidth = HALF_WIDTH * c + HALF_HEIGHT * s;
+		float leanHeight = HALF_WIDTH * s + HALF_HEIGHT * c;
+
+		return Math.abs(tx * aCos + ty * aSin) <= HALF_WIDTH * aScale + leanWidth
+				&& Math.abs(ty * aCos - tx * aSin) <= HALF_HEIGHT * aScale + leanHeight
+				&& Math.abs(tx * bCos + ty * bSin) <= HALF_WIDTH * bScale + leanWidth
+				&& Math.abs(ty * bCos - tx * bSin) <= HALF_HEIGHT * bScale + leanHeight;
+	}
+
+	/**
+	 * Builds a polygon for a car, as cars used to have for collisions.
+	 *
+	 * @return the polygon.
+	 */
+	static Polygon newPolygon() {
+		return new Polygon(new float[] {
+			-HALF_WIDTH,  HALF_HEIGHT,
+			-HALF_WIDTH, -HALF_HEIGHT,
+			 HALF_WIDTH, -HALF_HEIGHT,
+			 HALF_WIDTH,  HALF_HEIGHT,
+		});
+	}
+
+	/**
+	 * Tests pairs of randomly placed cars, close enough together that about half of them touch, with both this and
+	 * the general polygon test. Reports how often the two disagree and how long each took. Takes an optional number of
+	 * pairs.
+	 */
+	public static void main(String[] args) {
+		int numPairs = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		Rng rng = new Rng(21);
+		float[] data = new float[numPairs * 6];
+		for (int i = 0; i < data.length; i += 6) {
+			data[i] = (rng.random() - 0.5f) * 2 * MAX_DISTANCE;
+			data[i + 1] = (rng.random() - 0.5f) * 2 * MAX_DISTANCE;
+			data[i + 2] = rng.random() * MathUtils.PI2;
+			data[i + 3] = (rng.random() - 0.5f) * 2 * MAX_DISTANCE;
+			data[i + 4] = (rng.random() - 0.5f) * 2 * MAX_DISTANCE;
+			data[i + 5] = rng.random() * MathUtils.PI2;
+		}
+		Polygon a = newPolygon();
+		Polygon b = newPolygon();
+		float[] trig = new float[numPairs * 4];
+		for (int i = 0, j = 0; i < data.length; i += 6, j += 4) {
+			trig[j] = cos(data[i + 2]);
+			trig[j + 1] = sin(data[i + 2]);
+			trig[j + 2] = cos(data[i + 5]);
+			trig[j + 3] = sin(data[i + 5]);
+		}
+
+		for (int pass = 0; pass < 3; pass++) {
+			int polyHits = 0;
+			long startTime = System.nanoTime();
+			for (int i = 0; i < data.length; i += 6) {
+				a.setPosition(data[i], data[i + 1]);
+				a.setRotation(MathUtils.radDeg * data[i + 2]);
+				b.setPosition(data[i + 3], data[i + 4]);
+				b.setRotation(MathUtils.radDeg * data[i + 5]);
+				if (Polys.hit(a, b)) {
+					polyHits++;
+				}
+			}
+			double polySeconds = (System.nanoTime() - startTime) / 1e9;
+
+			int boxHits = 0;
+			startTime = System.nanoTime();
+			for (int i = 0, j = 0; i < data.length; i += 6, j += 4) {
+				if (hit(data[i], data[i + 1], trig[j], trig[j + 1], data[i + 3], data[i + 4], trig[j + 2], trig[j + 3])) {
+					boxHits++;
+				}
+			}
+			double boxSeconds = (System.nanoTime() - startTime) / 1e9;
+
+			int disagreements = 0;
+			for (int i = 0, j = 0; i < data.length; i += 6, j += 4) {
+				a.setPosition(data[i], data[i + 1]);
+				a.setRotation(MathUtils.radDeg * data[i + 2]);
+				b.setPosition(data[i + 3], data[i + 4]);
+				b.setRotation(MathUtils.radDeg * data[i + 5]);
+				boolean isBoxHit = hit(data[i], data[i + 1], trig[j], trig[j + 1], data[i + 3], data[i + 4],
+						trig[j + 2], trig[j + 3]);
+				if (Polys.hit(a, b) != isBoxHit) {
+					disagreements++;
+				}
+			}
+			System.out.printf("%d pairs, %d hits: polygons %.1fns, boxes %.1fns per test, %d disagreements%n", numPairs,
+					polyHits, polySeconds * 1e9 / numPairs, boxSeconds * 1e9 / numPairs, disagreements);
+			if (boxHits != polyHits) {
+				System.out.println("Hit counts differ: " + boxHits);
+			}
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package ld28;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * The state of every car on a level, held in parallel primitive arrays with one row per car. Car objects are thin
+ * handles onto rows, so code that deals with one car at a time still can, but the per-tick movement of every car is
+ * done by {@link #update(float)} in a single loop over the arrays rather than by chasing pointers from car to car.
+ * <p>
+ * Rows are added in spawn order and are never removed during a level. A row that isn't racing, such as a player who
+ * has crashed out or the ghost, is skipped by the batch update.
+ * <p>
+ * A car can be referred to by an integer handle, which holds its row and the row's generation. Every row's generation
+ * moves on when the table is reset for a new level, so a handle from an earlier level is recognised as stale rather
+ * than silently referring to whichever car has that row now.
+ */
+class CarTable {
+	/**
+	 * A handle that never refers to a car.
+	 */
+	public static final int NO_HANDLE = -1;
+
+	private static final float ACCEL = 100.0f;
+	private static final int ROW_BITS = 20;
+	private static final int ROW_MASK = (1 << ROW_BITS) - 1;
+	private static final int GENERATION_MASK = (1 << (31 - ROW_BITS)) - 1;
+
+	public int count;
+	public int[] pieceIndex;
+	public int[] currentSlot;
+	public float[] lane;
+	public float[] distance;
+	public float[] speed;
+	public float[] maxSpeed;
+	public float[] direction;
+	public float[] x;
+	public float[] y;
+	public float[] angle;
+	public float[] cos;
+	public float[] sin;
+	public float[] prevX;
+	public float[] prevY;
+	public float[] prevAngle;
+	public int[] prevPieceIndex;
+	public float[] prevDistance;
+	public int[] layer;
+	public int[] adjoiningLayer;
+	public boolean[] isRaceOver;
+	public boolean[] isRacing;
+	public Car[] cars;
+	private int[] generation;
+
+	private final Vector2 position = new Vector2();
+	private TrackBuilder track;
+
+	public CarTable(int capacity) {
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		pieceIndex = new int[capacity];
+		currentSlot = new int[capacity];
+		lane = new float[capacity];
+		distance = new float[capacity];
+		speed = new float[capacity];
+		maxSpeed = new float[capacity];
+		direction = new float[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		angle = new float[capacity];
+		cos = new float[capacity];
+		sin = new float[capacity];
+		prevX = new float[capacity];
+		prevY = new float[capacity];
+		prevAngle = new float[capacity];
+		prevPieceIndex = new int[capacity];
+		prevDistance = new float[capacity];
+		layer = new int[capacity];
+		adjoiningLayer = new int[capacity];
+		isRaceOver = new boolean[capacity];
+		isRacing = new boolean[capacity];
+		cars = new Car[capacity];
+		int[] oldGeneration = generation;
+		generation = new int[capacity];
+		if (oldGeneration != null) {
+			System.arraycopy(oldGeneration, 0, generation, 0, oldGeneration.length);
+		}
+	}
+
+	/**
+	 * Empties the table ready for a new level. This allocates if the table has to grow, so call it when a level
+	 * starts rather than every tick.
+	 *
+	 * @param track the level's track.
+	 * @param capacity the number of cars that the level will have.
+	 */
+	public void reset(TrackBuilder track, int capacity) {
+		this.track = track;
+		for (int i = 0; i < count; i++) {
+			generation[i] = (generation[i] + 1) & GENERATION_MASK;
+			cars[i] = null;
+		}
+		count = 0;
+		if (capacity > pieceIndex.length) {
+			allocate(capacity);
+		}
+	}
+
+	public TrackBuilder track() {
+		return track;
+	}
+
+	/**
+	 * Adds a car, placing it at the start of a track piece.
+	 *
+	 * @param car the car that will be the row's handle, or null if there isn't one.
+	 * @param pieceIndex the piece that the car starts on.
+	 * @param currentSlot the car's lane, from -MAX_SLOT to MAX_SLOT.
+	 * @param maxSpeed the car's top speed.
+	 * @return the car's row.
+	 */
+	public int add(Car car, int pieceIndex, int currentSlot, float maxSpeed) {
+		if (count == this.pieceIndex.length) {
+			grow();
+		}
+		int i = count++;
+		this.cars[i] = car;
+		this.pieceIndex[i] = pieceIndex;
+		this.currentSlot[i] = currentSlot;
+		this.lane[i] = currentSlot * Car.LANE_WIDTH;
+		this.distance[i] = 0;
+		this.speed[i] = 0;
+		this.maxSpeed[i] = maxSpeed;
+		this.direction[i] = 1.0f;
+		this.isRaceOver[i] = false;
+		this.isRacing[i] = true;
+		updatePosition(i);
+		savePreviousPose(i);
+		return i;
+	}
+
+	private void grow() {
+		int capacity = Math.max(16, pieceIndex.length * 2);
+		pieceIndex = Arrays.copyOf(pieceIndex, capacity);
+		currentSlot = Arrays.copyOf(currentSlot, capacity);
+		lane = Arrays.copyOf(lane, capacity);
+		distance = Arrays.copyOf(distance, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		maxSpeed = Arrays.copyOf(maxSpeed, capacity);
+		direction = Arrays.copyOf(direction, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		angle = Arrays.copyOf(angle, capacity);
+		cos = Arrays.copyOf(cos, capacity);
+		sin = Arrays.copyOf(sin, capacity);
+		prevX = Arrays.copyOf(prevX, capacity);
+		prevY = Arrays.copyOf(prevY, capacity);
+		prevAngle = Arrays.copyOf(prevAngle, capacity);
+		prevPieceIndex = Arrays.copyOf(prevPieceIndex, capacity);
+		prevDistance = Arrays.copyOf(prevDistance, capacity);
+		layer = Arrays.copyOf(layer, capacity);
+		adjoiningLayer = Arrays.copyOf(adjoiningLayer, capacity);
+		isRaceOver = Arrays.copyOf(isRaceOver, capacity);
+		isRacing = Arrays.copyOf(isRacing, capacity);
+		cars = Arrays.copyOf(cars, capacity);
+		generation = Arrays.copyOf(generation, capacity);
+	}
+
+	/**
+	 * Returns the handle for a row, which is valid until the table is next reset.
+	 *
+	 * @param row the row.
+	 * @return the handle.
+	 */
+	public int handle(int row) {
+		return (generation[row] << ROW_BITS) | row;
+	}
+
+	/**
+	 * Returns the row that a handle refers to.
+	 *
+	 * @param handle the handle.
+	 * @return the row, or -1 if the handle is stale or was never valid.
+	 */
+	public int row(int handle) {
+		if (handle < 0) {
+			return -1;
+		}
+		int row = handle & ROW_MASK;
+		return (row < count && generation[row] == handle >>> ROW_BITS) ? row : -1;
+	}
+
+	/**
+	 * Returns the car that a handle refers to.
+	 *
+	 * @param handle the handle.
+	 * @return the car, or null if the handle is stale or was never valid.
+	 */
+	public Car car(int handle) {
+		int row = row(handle);
+		return (row < 0) ? null : cars[row];
+	}
+
+	/**
+	 * Moves every racing car along the track by one tick.
+	 *
+	 * @param delta the length of the tick in seconds.
+	 */
+	public void update(float delta) {
+		for (int i = 0, n = count; i < n; i++) {
+			if (!isRacing[i]) {
+				continue;
+			}
+			prevX[i] = x[i];
+			prevY[i] = y[i];
+			prevAngle[i] = angle[i];
+			prevPieceIndex[i] = pieceIndex[i];
+			prevDistance[i] = distance[i];
+			float s = speed[i];
+			if (!isRaceOver[i]) {
+				s = Math.min(maxSpeed[i], s + delta * ACCEL);
+			}
+			else {
+				s = s + (maxSpeed[i] - s) * delta;
+			}
+			speed[i] = s;
+			distance[i] += delta * s;
+			updatePosition(i);
+		}
+	}
+
+	/**
+	 * Works out a car's position on the track from its piece, lane and distance, moving it onto the next piece if it
+	 * has gone past the end of the current one.
+	 *
+	 * @param i the car's row.
+	 */
+	public void updatePosition(int i) {
+		List<TrackPiece> pieces = track.pieces();
+		int p = pieceIndex[i];
+		float l = lane[i];
+		float d = distance[i];
+		TrackPiece piece = pieces.get(p);
+		float length = piece.length(l);
+		while (d >= length) {
+			d -= length;
+			p = (p + 1) % pieces.size();
+			piece = pieces.get(p);
+			length = piece.length(l);
+		}
+		pieceIndex[i] = p;
+		distance[i] = d;
+		piece.positionAt(d, l, position);
+		x[i] = position.x;
+		y[i] = position.y;
+		float a = piece.angleAt(d, l);
+		angle[i] = a;
+		cos[i] = CarShape.cos(a);
+		sin[i] = CarShape.sin(a);
+		layer[i] = piece.layer();
+		adjoiningLayer[i] = track.adjoiningLayer(p, d, l, Car.HALF_WIDTH);
+	}
+
+	public void savePreviousPose(int i) {
+		prevX[i] = x[i];
+		prevY[i] = y[i];
+		prevAngle[i] = angle[i];
+		prevPieceIndex[i] = pieceIndex[i];
+		prevDistance[i] = distance[i];
+	}
+
+	/**
+	 * Races a crowd of computer cars around the first level's track, without collisions, and reports how many car
+	 * updates per second the batch update manages. Takes an optional number of cars and number of ticks.
+	 */
+	public static void main(String[] args) {
+		int numCars = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : 6000;
+		TrackBuilder track = new TrackBuilder();
+		World.generateTrack(World.levelDef(0), track);
+		CarTable table = new CarTable(numCars);
+		table.reset(track, numCars);
+		Rng rng = new Rng(1);
+		for (int i = 0; i < numCars; i++) {
+			table.add(null, rng.random(0, track.pieces().size() - 1), rng.random(-2, 2), rng.random(300, 400));
+		}
+		float delta = 1.0f / Simulator.TICKS_PER_SECOND;
+		long startTime = System.nanoTime();
+		for (int i = 0; i < ticks; i++) {
+			table.update(delta);
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.out.printf("%d cars for %d ticks in %.3fs (%.0f ticks/s, %.1fus per tick)%n", numCars, ticks, seconds,
+				ticks / seconds, seconds * 1e6 / ticks);
+	}
+}
@@ -0,0 +1,110 @@
+package ld28;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which pairs of cars were touching on the last tick, so that the World can tell a new contact from one
+ * that has carried on from before and only respond to the new ones. Pairs are keyed by the cars' handles, which unlike
+ * their places in the list of racing cars don't change when a car leaves the race, and each pair records which of the
+ * two cars was in front.
+ * <p>
+ * The contacts from the last tick and this tick are held in two sorted arrays that swap over every tick, so looking a
+ * pair up is a binary search and nothing is allocated once the arrays are big enough.
+ */
+class ContactCache {
+	private long[] previous = new long[64];
+	private int numPrevious;
+	private long[] current = new long[64];
+	private int numCurrent;
+
+	/**
+	 * Forgets every contact, as at the start of a level.
+	 */
+	public void clear() {
+		numPrevious = 0;
+		numCurrent = 0;
+	}
+
+	/**
+	 * Starts a new tick. The contacts added during the last tick become the ones that {@link #find(int, int)} looks
+	 * in.
+	 */
+	public void beginTick() {
+		long[] swap = previous;
+		previous = current;
+		numPrevious = numCurrent;
+		current = swap;
+		numCurrent = 0;
+	}
+
+	/**
+	 * Finishes a tick, sorting the contacts that were added during it.
+	 */
+	public void endTick() {
+		Arrays.sort(current, 0, numCurrent);
+	}
+
+	/**
+	 * Looks up whether two cars were touching on the last tick.
+	 *
+	 * @param a one car's handle.
+	 * @param b the other car's handle.
+	 * @return 1 if they were touching with the first car in front, -1 if they were touching with the second car in
+	 *         front, or 0 if they weren't touching.
+	 */
+	public int find(int a, int b) {
+		if (Arrays.binarySearch(previous, 0, numPrevious, key(a, b)) >= 0) {
+			return 1;
+		}
+		if (Arrays.binarySearch(previous, 0, numPrevious, key(b, a)) >= 0) {
+			return -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Records that two cars are touching on this tick.
+	 *
+	 * @param front the handle of the car in front.
+	 * @param rear the handle of the car behind.
+	 */
+	public void add(int front, int rear) {
+		if (numCurrent == current.length) {
+			current = Arrays.copyOf(current, numCurrent * 2);
+		}
+		current[numCurrent++] = key(front, rear);
+	}
+
+	/**
+	 * Returns the number of contacts that were added on the last complete tick.
+	 *
+	 * @return the number of contacts.
+	 */
+	public int size() {
+		return numCurrent;
+	}
+
+	/**
+	 * Returns the handle of the car in front in one of the last complete tick's contacts.
+	 *
+	 * @param contact the contact, from 0 to size().
+	 * @return the handle.
+	 */
+	public int front(int contact) {
+		return (int) (current[contact] >>> 32);
+	}
+
+	/**
+	 * Returns the handle of the car behind in one of the last complete tick's contacts.
+	 *
+	 * @param contact the contact, from 0 to size().
+	 * @return the handle.
+	 */
+	public int rear(int contact) {
+		return (int) current[contact];
+	}
+
+	private static long key(int front, int rear) {
+		return ((long) front << 32) | (rear & 0xffffffffL);
+	}
+}
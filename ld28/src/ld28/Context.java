@@ -0,0 +1,43 @@
+package ld28;
+
+import ldtk.Time;
+
+/**
+ * Everything that a World needs from the outside world. The game supplies one that is backed by the kernel, while
+ * a headless simulation can supply its own time, input, sounds, random numbers and event broker.
+ */
+public class Context {
+
+	/**
+	 * The simulation's time source.
+	 */
+	public final Time time;
+
+	/**
+	 * Where the players' input comes from.
+	 */
+	public final InputSource input;
+
+	/**
+	 * Where sound effects go.
+	 */
+	public final SoundSink sounds;
+
+	/**
+	 * The simulation's random number generator.
+	 */
+	public final Rng rng;
+
+	/**
+	 * The simulation's event broker.
+	 */
+	public final Broker broker;
+
+	public Context(Time time, InputSource input, SoundSink sounds, Rng rng, Broker broker) {
+		this.time = time;
+		this.input = input;
+		this.sounds = sounds;
+		this.rng = rng;
+		this.broker = broker;
+	}
+}
@@ -0,0 +1,25 @@
+package ld28;
+
+import ldtk.Kernel;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Player input from the keyboard and touch screen.
+ */
+class GameInput implements InputSource {
+
+	@Override
+	public void poll() {
+	}
+
+	@Override
+	public boolean isKeyPressed(int key) {
+		return Gdx.input.isKeyPressed(key);
+	}
+
+	@Override
+	public boolean justTouched() {
+		return Kernel.touches.justTouched();
+	}
+}
@@ -0,0 +1,14 @@
+package ld28;
+
+import ldtk.Kernel;
+
+/**
+ * Plays sound effects through the kernel.
+ */
+class GameSounds implements SoundSink {
+
+	@Override
+	public void play(String name) {
+		Kernel.sounds.get(name).play();
+	}
+}
@@ -0,0 +1,73 @@
+package ld28;
+
+/**
+ * A car that follows a recorded lap, over and over again. Ghosts don't take part in collisions.
+ */
+class GhostCar extends Car {
+	private LapTimeline lap;
+	private int tick;
+
+	public GhostCar(CarTable table, Context context) {
+		super(table, context);
+	}
+
+	/**
+	 * Puts the ghost at the start of a recorded lap on the table's current level.
+	 * 
+	 * @param lap the lap to follow.
+	 */
+	public void spawn(LapTimeline lap) {
+		spawn(lap.pieceIndex(0), 0, 0);
+		// The ghost moves itself rather than being moved by the table.
+		setRacing(false);
+		this.lap = lap;
+		this.tick = 0;
+		followLap();
+		savePreviousPose();
+	}
+
+	public void update() {
+		savePreviousPose();
+		tick++;
+		if (tick >= lap.length()) {
+			tick = 0;
+		}
+		followLap();
+	}
+
+	/**
+	 * Returns how far through the lap the ghost is.
+	 * 
+	 * @return the tick within the lap.
+	 */
+	public int tick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the number of ticks in the lap that the ghost follows.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public int lapLength() {
+		return lap.length();
+	}
+
+	/**
+	 * Moves the ghost to a given tick within its lap.
+	 * 
+	 * @param tick the tick within the lap.
+	 */
+	public void setTick(int tick) {
+		this.tick = tick;
+		followLap();
+		savePreviousPose();
+	}
+
+	private void followLap() {
+		table.pieceIndex[row] = lap.pieceIndex(tick);
+		table.lane[row] = lap.lane(tick);
+		table.distance[row] = lap.distance(tick);
+		updatePosition();
+	}
+}
@@ -0,0 +1,39 @@
+package ld28;
+
+/**
+ * Keeps the fastest lap recorded on each level so that it can be raced against as a ghost.
+ */
+class Ghosts {
+	private final LapTimeline[] bestLaps;
+
+	public Ghosts(int numLevels) {
+		bestLaps = new LapTimeline[numLevels];
+	}
+
+	/**
+	 * Returns the fastest lap recorded on a level.
+	 * 
+	 * @param level the level.
+	 * @return the fastest lap, or null if no lap has been recorded on the level.
+	 */
+	public LapTimeline bestLap(int level) {
+		return bestLaps[level];
+	}
+
+	/**
+	 * Offers a completed lap. If it is the fastest on its level then a copy of it is kept. The copy is a new timeline
+	 * rather than the old best lap overwritten, as a ghost on the current level may still be following that.
+	 * 
+	 * @param level the level.
+	 * @param lap the lap.
+	 */
+	public void offer(int level, LapTimeline lap) {
+		LapTimeline best = bestLaps[level];
+		if (best != null && lap.length() >= best.length()) {
+			return;
+		}
+		best = new LapTimeline(lap.length());
+		best.set(lap);
+		bestLaps[level] = best;
+	}
+}
@@ -0,0 +1,47 @@
+package ld28;
+
+/**
+ * A source of player input. The game reads the keyboard and touch screen, but a headless simulation can supply
+ * scripted input instead.
+ */
+public interface InputSource {
+
+	/**
+	 * An input source where nothing is ever pressed.
+	 */
+	public static final InputSource NONE = new InputSource() {
+		@Override
+		public void poll() {
+		}
+
+		@Override
+		public boolean isKeyPressed(int key) {
+			return false;
+		}
+
+		@Override
+		public boolean justTouched() {
+			return false;
+		}
+	};
+
+	/**
+	 * Called by the World once at the start of every tick, before anything reads the input.
+	 */
+	public abstract void poll();
+
+	/**
+	 * Tests if a key is currently pressed.
+	 * 
+	 * @param key the key code, as defined by libGDX's Input.Keys.
+	 * @return true if the key is pressed, otherwise false.
+	 */
+	public abstract boolean isKeyPressed(int key);
+
+	/**
+	 * Tests if the screen was touched since the previous tick.
+	 * 
+	 * @return true if the screen was just touched, otherwise false.
+	 */
+	public abstract boolean justTouched();
+}
@@ -0,0 +1,83 @@
+package ld28;
+
+/**
+ * A car's position on the track at every tick of a lap, held in parallel primitive arrays so that playing it back
+ * costs an array index per tick and nothing else.
+ */
+class LapTimeline {
+	private int[] pieceIndexes;
+	private float[] lanes;
+	private float[] distances;
+	private int length;
+
+	public LapTimeline(int capacity) {
+		pieceIndexes = new int[capacity];
+		lanes = new float[capacity];
+		distances = new float[capacity];
+	}
+
+	public void clear() {
+		length = 0;
+	}
+
+	/**
+	 * Appends the car's position at the next tick, growing the timeline if necessary.
+	 */
+	public void add(int pieceIndex, float lane, float distance) {
+		if (length == pieceIndexes.length) {
+			ensureCapacity(length * 2);
+		}
+		pieceIndexes[length] = pieceIndex;
+		lanes[length] = lane;
+		distances[length] = distance;
+		length++;
+	}
+
+	/**
+	 * Makes this timeline a copy of another.
+	 * 
+	 * @param other the other timeline.
+	 */
+	public void set(LapTimeline other) {
+		ensureCapacity(other.length);
+		System.arraycopy(other.pieceIndexes, 0, pieceIndexes, 0, other.length);
+		System.arraycopy(other.lanes, 0, lanes, 0, other.length);
+		System.arraycopy(other.distances, 0, distances, 0, other.length);
+		length = other.length;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > pieceIndexes.length) {
+			int[] newPieceIndexes = new int[capacity];
+			float[] newLanes = new float[capacity];
+			float[] newDistances = new float[capacity];
+			System.arraycopy(pieceIndexes, 0, newPieceIndexes, 0, length);
+			System.arraycopy(lanes, 0, newLanes, 0, length);
+			System.arraycopy(distances, 0, newDistances, 0, length);
+			pieceIndexes = newPieceIndexes;
+			lanes = newLanes;
+			distances = newDistances;
+		}
+	}
+
+	/**
+	 * Returns the number of ticks in the timeline.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public int length() {
+		return length;
+	}
+
+	public int pieceIndex(int tick) {
+		return pieceIndexes[tick];
+	}
+
+	public float lane(int tick) {
+		return lanes[tick];
+	}
+
+	public float distance(int tick) {
+		return distances[tick];
+	}
+}
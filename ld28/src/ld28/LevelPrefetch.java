@@ -0,0 +1,154 @@
+package ld28;
+
+import java.util.BitSet;
+
+/**
+ * Prepares a level ahead of time: its track, and where its computer cars start. The World asks for the next level
+ * while the current one is winding down, and the work can be done on any thread. When the level starts the World
+ * swaps the prepared track for its own and spawns the cars from the prepared layout.
+ * <p>
+ * Spawning uses the World's random number generator, so the layout is made with a copy of the generator's state. The
+ * World only uses the layout if its generator is still in that state when the level starts, and it carries on from
+ * where the copy finished. That way the race is the same whether or not the level was prefetched.
+ */
+class LevelPrefetch implements Runnable {
+	private static final int SPAWN_MARGIN = 1;
+
+	private final Rng rng = new Rng(0);
+	private TrackBuilder track = new TrackBuilder();
+	private int level = -1;
+	private long rngState;
+	private volatile boolean isReady;
+	private int numCars;
+	private int[] pieceIndexes = new int[TrackBuilder.MAX_TRACK_PIECES];
+	private int[] slots = new int[TrackBuilder.MAX_TRACK_PIECES];
+	private int[] speeds = new int[TrackBuilder.MAX_TRACK_PIECES];
+	private int playerSide;
+	private long rngStateAfter;
+
+	/**
+	 * Asks for a level to be prepared. It isn't prepared until run() or take() is called.
+	 *
+	 * @param level the level.
+	 * @param rngState the state of the World's random number generator at the start of the level.
+	 */
+	public synchronized void request(int level, long rngState) {
+		this.level = level;
+		this.rngState = rngState;
+		isReady = false;
+	}
+
+	/**
+	 * Prepares the requested level, if it isn't prepared already.
+	 */
+	@Override
+	public synchronized void run() {
+		if (!isReady && level >= 0) {
+			prepare();
+		}
+	}
+
+	/**
+	 * Returns the prepared track if the given level has been prepared. This never waits.
+	 *
+	 * @param level the level.
+	 * @return the track, or null if it isn't ready.
+	 */
+	public TrackBuilder readyTrack(int level) {
+		// The volatile read of isReady makes the track that was built before it was set visible.
+		return (isReady && this.level == level) ? track : null;
+	}
+
+	/**
+	 * Makes sure that the given level has been prepared from the given generator state, preparing it now if it hasn't
+	 * been, or waiting if it is being prepared on another thread.
+	 *
+	 * @param level the level.
+	 * @param rngState the current state of the World's random number generator.
+	 */
+	public synchronized void take(int level, long rngState) {
+		if (!isReady || this.level != level || this.rngState != rngState) {
+			request(level, rngState);
+			prepare();
+		}
+	}
+
+	/**
+	 * Swaps the prepared track for another one, which will be reused for the next level that is prepared.
+	 *
+	 * @param oldTrack the track to give back.
+	 * @return the prepared track.
+	 */
+	public synchronized TrackBuilder swapTrack(TrackBuilder oldTrack) {
+		TrackBuilder newTrack = track;
+		track = oldTrack;
+		isReady = false;
+		// Forget the request too, so that a late run() doesn't prepare it again into the old track.
+		level = -1;
+		return newTrack;
+	}
+
+	private void prepare() {
+		String trackDef = World.levelDef(level);
+		World.generateTrack(trackDef, track);
+		numCars = World.numCars(trackDef);
+
+		// Spawn the computer cars, avoiding piece 0 so that the players don't get screwed.
+		// Computer cars aren't allowed to spawn on each other.
+		rng.setState(rngState);
+		BitSet[] occupied = new BitSet[5];
+		for (int i = 0; i < occupied.length; i++) {
+			occupied[i] = new BitSet();
+		}
+		int numPieces = track.pieces().size();
+		for (int i = 0; i < numCars; i++) {
+			int attempts = 20;
+			int pieceIndex;
+			int lane;
+			do {
+				pieceIndex = rng.random(SPAWN_MARGIN + 1, numPieces - 1);
+				lane = rng.random(-2, 2);
+			} while (occupied[lane + 2].get(pieceIndex) && attempts-- > 0);
+			pieceIndexes[i] = pieceIndex;
+			slots[i] = lane;
+			speeds[i] = rng.random(300, 400);
+		}
+		playerSide = rng.randomBoolean() ? 1 : -1;
+		rngStateAfter = rng.state();
+		isReady = true;
+	}
+
+	public int numCars() {
+		return numCars;
+	}
+
+	public int pieceIndex(int car) {
+		return pieceIndexes[car];
+	}
+
+	public int slot(int car) {
+		return slots[car];
+	}
+
+	public int speed(int car) {
+		return speeds[car];
+	}
+
+	/**
+	 * Returns which side of the track player one starts on.
+	 *
+	 * @return 1 or -1.
+	 */
+	public int playerSide() {
+		return playerSide;
+	}
+
+	/**
+	 * Returns the state that the World's random number generator should be in once the level has been spawned.
+	 *
+	 * @return the state.
+	 */
+	public long rngStateAfter() {
+		return rngStateAfter;
+	}
+}
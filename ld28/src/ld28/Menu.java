@@ -23,10 +23,12 @@ public class Menu extends State {
 	private String startInstructions = "Press [1] or [2] to select the number of players and start";
 	private String firstLine = "Player 1 (red car) - press 'A' to change lanes in the direction of the arrow";
 	private String secondLine = "Player 2 (blue car) - press 'L' to change lanes in the direction of the arrow";
+	private String replayLine = "Press [R] to watch the last race (hold [F] to fast forward)";
 	private String credits = "A Ludum Dare 28 entry by badlydrawnrod";
 	private String startInstructionsAndroid = "Tap to start the game";
 	private String firstLineAndroid = "To play, tap to change lanes in the direction of the arrow";
 	private boolean isTwoPressed;
+	private boolean isRPressed;
 	private Image titleImage;
 
 	public Menu(App app) {
@@ -38,6 +40,7 @@ public class Menu extends State {
 		guiCam = Kernel.cameras.create("guiCam");
 		font = Kernel.fonts.get("fonts/consolas32");
 		titleImage = Kernel.images.get("atlases/ld28/title");
+		app.prefetchReplay(this);
 	}
 
 	@Override
@@ -45,11 +48,16 @@ public class Menu extends State {
 		guiCam.dispose();
 	}
 
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	@Override
 	public void update() {
 		boolean wasOnePressed = isOnePressed;
 		isOnePressed = Gdx.input.isKeyPressed(Keys.NUM_1);
-		boolean justTouched = Gdx.input.justTouched();
+		boolean justTouched = Kernel.touches.justTouched();
 		if ((wasOnePressed && !isOnePressed) || justTouched) {
 			app.requestPlaying(false);
 		}
@@ -58,6 +66,11 @@ public class Menu extends State {
 		if ((wasTwoPressed && !isTwoPressed)) {
 			app.requestPlaying(true);
 		}
+		boolean wasRPressed = isRPressed;
+		isRPressed = Gdx.input.isKeyPressed(Keys.R);
+		if (wasRPressed && !isRPressed) {
+			app.requestReplay();
+		}
 		boolean wasEscapePressed = isEscapePressed;
 		isEscapePressed = Gdx.input.isKeyPressed(Keys.ESCAPE);
 		if (wasEscapePressed && !isEscapePressed) {
@@ -83,6 +96,8 @@ public class Menu extends State {
 			font.draw(firstLine, x, y, Color.WHITE);
 			y -= rect.height * 2;
 			font.draw(secondLine, x, y, Color.WHITE);
+			y -= rect.height * 2;
+			font.draw(replayLine, x, y, Color.WHITE);
 		}
 		else {
 			font.draw(startInstructionsAndroid, x, y, Color.WHITE);
@@ -0,0 +1,227 @@
+package ld28;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tests which of the pairs that the {@link TrackSweep} found are really touching, optionally sharing the pairs out
+ * across threads. Collisions are handled in two steps. First every pair is tested here, which only reads the cars'
+ * positions and changes nothing. Then the World goes through the pairs in order on its own thread and makes the cars
+ * respond. The responses slow cars down and move them into other lanes, but never move them on the track, so the
+ * tests come out the same whether they are done before any responses or between them, as they used to be. That keeps
+ * the race exactly the same however many threads do the tests.
+ * <p>
+ * The pairs are split into one run per thread rather than split by where the cars are on the track, because the
+ * sweep keeps them in order of the first car's place in the race and it's the number of pairs that decides how long
+ * a run takes. The calling thread tests the first run itself and waits for the others. Without an executor, or
+ * with too few pairs to be worth splitting, every pair is tested on the calling thread.
+ */
+class NarrowPhase {
+	/**
+	 * The result for a pair whose cars are touching. Which car ran into which is left to the World to work out as it
+	 * responds, as that depends on how far along their piece the cars are, which responses do change.
+	 */
+	static final int TOUCHING = 2;
+
+	// Fewer pairs than this aren't worth handing to another thread.
+	private static final int MIN_PAIRS_PER_PART = 256;
+
+	private Executor executor;
+	private Part[] parts = new Part[0];
+	private TrackSweep sweep;
+	private List<Car> cars;
+	private byte[] results = new byte[64];
+	private int remaining;
+	private RuntimeException failure;
+
+	/**
+	 * Sets where the pairs are tested.
+	 *
+	 * @param executor the executor that runs all but one of the parts, or null to test every pair on the calling
+	 *        thread.
+	 * @param numParts the most parts to split the pairs into, counting the one run on the calling thread.
+	 */
+	public void setExecutor(Executor executor, int numParts) {
+		this.executor = executor;
+		parts = new Part[(executor == null) ? 1 : Math.max(1, numParts)];
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = new Part();
+		}
+	}
+
+	/**
+	 * Tests every pair that the sweep found. This doesn't allocate unless there are more pairs than ever before.
+	 *
+	 * @param sweep the sweep, which has just found the pairs.
+	 * @param cars the cars that are racing.
+	 * @param numPairs the number of pairs that the sweep found.
+	 */
+	public void test(TrackSweep sweep, List<Car> cars, int numPairs) {
+		if (results.length < numPairs) {
+			results = new byte[Math.max(numPairs, results.length * 2)];
+		}
+		this.sweep = sweep;
+		this.cars = cars;
+		int numParts = Math.max(1, Math.min(parts.length, numPairs / MIN_PAIRS_PER_PART));
+		if (numParts == 1) {
+			test(0, numPairs);
+		}
+		else {
+			runParts(numParts, numPairs);
+		}
+		this.sweep = null;
+		this.cars = null;
+	}
+
+	/**
+	 * Returns the result of testing a pair.
+	 *
+	 * @param pair the pair.
+	 * @return {@link #TOUCHING} if the cars are touching, 1 or -1 if they passed through each other during the tick
+	 *         with the first or the second car ahead, or 0 if they didn't touch.
+	 */
+	public int result(int pair) {
+		return results[pair];
+	}
+
+	private void runParts(int numParts, int numPairs) {
+		synchronized (this) {
+			remaining = numParts;
+			failure = null;
+		}
+		for (int i = 0; i < numParts; i++) {
+			parts[i].from = (int) ((long) numPairs * i / numParts);
+			parts[i].to = (int) ((long) numPairs * (i + 1) / numParts);
+		}
+		for (int i = 1; i < numParts; i++) {
+			try {
+				executor.execute(parts[i]);
+			}
+			catch (RejectedExecutionException e) {
+				parts[i].run();
+			}
+		}
+		parts[0].run();
+
+		boolean isInterrupted = false;
+		synchronized (this) {
+			// The results must all be in before the World responds to any of them, so an interrupt can't stop the wait.
+			while (remaining > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					isInterrupted = true;
+				}
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private synchronized void finished(RuntimeException e) {
+		if (e != null && failure == null) {
+			failure = e;
+		}
+		if (--remaining == 0) {
+			notifyAll();
+		}
+	}
+
+	private void test(int from, int to) {
+		TrackSweep sweep = this.sweep;
+		List<Car> cars = this.cars;
+		byte[] results = this.results;
+		for (int k = from; k < to; k++) {
+			Car car = cars.get(sweep.first(k));
+			Car other = cars.get(sweep.second(k));
+			// On a long tick a fast car can go right through a slower one without them ever overlapping.
+			results[k] = (byte) (car.touches(other) ? TOUCHING : sweep.sweptHit(k));
+		}
+	}
+
+	private class Part implements Runnable {
+		int from;
+		int to;
+
+		@Override
+		public void run() {
+			RuntimeException failure = null;
+			try {
+				test(from, to);
+			}
+			catch (RuntimeException e) {
+				failure = e;
+			}
+			finished(failure);
+		}
+	}
+
+	/**
+	 * Races a crowd of computer cars around the first level's track, without responding to collisions, and reports
+	 * how long the pairs take to test on each number of threads from 1 up to the number of processors, and whether
+	 * every number of threads got the same results. Takes an optional number of cars, number of ticks and largest
+	 * number of threads.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int numCars = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+		int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : 600;
+		int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		TrackBuilder track = new TrackBuilder();
+		World.generateTrack(World.levelDef(0), track);
+		float delta = 1.0f / Simulator.TICKS_PER_SECOND;
+		double oneThreadSeconds = 0;
+		long oneThreadChecksum = 0;
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			CarTable table = new CarTable(numCars);
+			table.reset(track, numCars);
+			Rng rng = new Rng(1);
+			List<Car> cars = new ArrayList<Car>();
+			for (int i = 0; i < numCars; i++) {
+				Car car = new Car(table, null);
+				car.spawn(rng.random(0, track.pieces().size() - 1), rng.random(-2, 2), rng.random(300, 400));
+				cars.add(car);
+			}
+			TrackSweep sweep = new TrackSweep();
+			sweep.reset(track);
+			ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads - 1) : null;
+			NarrowPhase narrowPhase = new NarrowPhase();
+			narrowPhase.setExecutor(executor, threads);
+
+			long checksum = 0;
+			long totalPairs = 0;
+			long testNanos = 0;
+			for (int i = 0; i < ticks; i++) {
+				table.update(delta);
+				int numPairs = sweep.findPairs(cars);
+				long startTime = System.nanoTime();
+				narrowPhase.test(sweep, cars, numPairs);
+				testNanos += System.nanoTime() - startTime;
+				for (int k = 0; k < numPairs; k++) {
+					checksum = checksum * 31 + narrowPhase.result(k);
+				}
+				totalPairs += numPairs;
+			}
+			if (executor != null) {
+				executor.shutdown();
+			}
+
+			double seconds = testNanos / 1e9;
+			if (threads == 1) {
+				oneThreadSeconds = seconds;
+				oneThreadChecksum = checksum;
+			}
+			System.out.printf("%d threads: %d cars, %d pairs per tick, %.1fus per tick, %.2fx, results %s%n", threads,
+					numCars, totalPairs / ticks, seconds * 1e6 / ticks, oneThreadSeconds / seconds,
+					(checksum == oneThreadChecksum) ? "the same" : "DIFFERENT");
+		}
+	}
+}
@@ -1,27 +1,38 @@
 package ld28;
 
-import ldtk.Kernel;
-import ldtk.Sound;
-
-import com.badlogic.gdx.Gdx;
-
 class PlayerCar extends Car {
+	private static final String LAP_COMPLETE_SOUND = "sounds/lapcomplete";
+	private static final String CRASH_SOUND = "sounds/crash";
+
 	private int key;
 	private boolean isKeyPressed;
 	private int playerNumber;
-	private Sound lapCompleteSound;
-	private Sound crashSound;
 	private int lap;
 	private float health;
+	private int crashes;
+	private int lastPieceIndex;
 	
-	public PlayerCar(int playerNumber, int key, TrackBuilder track, int pieceIndex, int currentSlot, float speed) {
-		super(track, pieceIndex, currentSlot, speed);
+	public PlayerCar(CarTable table, Context context) {
+		super(table, context);
+	}
+
+	/**
+	 * Puts the player's car at the start of a track piece on the table's current level, ready to race.
+	 * 
+	 * @param playerNumber 1 or 2.
+	 * @param key the key that the player steers with.
+	 * @param pieceIndex the piece that the car starts on.
+	 * @param currentSlot the car's lane, from -MAX_SLOT to MAX_SLOT.
+	 * @param speed the car's top speed.
+	 */
+	public void spawn(int playerNumber, int key, int pieceIndex, int currentSlot, float speed) {
+		spawn(pieceIndex, currentSlot, speed);
 		this.playerNumber = playerNumber;
 		this.key = key;
-		this.lapCompleteSound = Kernel.sounds.get("sounds/lapcomplete");
-		this.crashSound = Kernel.sounds.get("sounds/crash");
+		isKeyPressed = false;
 		lap = 1;
 		health = 1.0f;
+		crashes = 0;
 	}
 	
 	public int lap() {
@@ -32,27 +43,42 @@ class PlayerCar extends Car {
 		return health;
 	}
 
-	public void update() {
-		if (!isRaceOver) {
+	@Override
+	public boolean isCrashedOut() {
+		return health < 0;
+	}
+
+	/**
+	 * Returns the number of collisions that this car has been involved in.
+	 * 
+	 * @return the number of collisions.
+	 */
+	public int crashes() {
+		return crashes;
+	}
+
+	@Override
+	public void beforeUpdate() {
+		if (!table.isRaceOver[row]) {
 			boolean wasKeyPressed = isKeyPressed;
-			isKeyPressed = Gdx.input.isKeyPressed(key);
-			boolean justTouched = Gdx.input.justTouched();
+			isKeyPressed = context.input.isKeyPressed(key);
+			boolean justTouched = context.input.justTouched();
 			if ((wasKeyPressed && !isKeyPressed) || justTouched) {
-				currentSlot += direction;
+				changeSlot(table.currentSlot[row] + table.direction[row]);
+				int currentSlot = table.currentSlot[row];
 				if (currentSlot == MAX_SLOT || currentSlot == -MAX_SLOT) {
-					direction = -direction;
+					table.direction[row] = -table.direction[row];
 				}
-				float newLane = LANE_WIDTH * currentSlot;
-				TrackPiece piece = track.pieces().get(pieceIndex);
-				distance *= piece.length(newLane) / piece.length(lane);
-				lane = newLane;
 			}
 		}
-		int lastPieceIndex = pieceIndex;
-		super.update();
-		if (pieceIndex < lastPieceIndex) {
+		lastPieceIndex = table.pieceIndex[row];
+	}
+
+	@Override
+	public void afterUpdate() {
+		if (table.pieceIndex[row] < lastPieceIndex) {
 			lap++;
-			lapCompleteSound.play();
+			context.sounds.play(LAP_COMPLETE_SOUND);
 		}
 	}
 
@@ -60,23 +86,47 @@ class PlayerCar extends Car {
 		return playerNumber;
 	}
 
-	public float direction() {
-		return direction;
+	@Override
+	public long hash(long hash) {
+		hash = super.hash(hash);
+		hash = StateHash.mix(hash, health);
+		hash = StateHash.mix(hash, lap);
+		return hash;
 	}
-	
+
+	@Override
+	public void save(WorldSnapshot snapshot, int index) {
+		super.save(snapshot, index);
+		snapshot.isKeyPressed[index] = isKeyPressed;
+		snapshot.lap[index] = lap;
+		snapshot.health[index] = health;
+		snapshot.crashes[index] = crashes;
+	}
+
+	@Override
+	public void restore(WorldSnapshot snapshot, int index) {
+		super.restore(snapshot, index);
+		isKeyPressed = snapshot.isKeyPressed[index];
+		lap = snapshot.lap[index];
+		health = snapshot.health[index];
+		crashes = snapshot.crashes[index];
+	}
+
 	@Override
 	public void onWasRunInto(Car other) {
-		crashSound.play();
-		if (!isRaceOver) {
+		crashes++;
+		context.sounds.play(CRASH_SOUND);
+		if (!table.isRaceOver[row]) {
 			health -= 0.05f;
 		}
 	}
 	
 	@Override
 	public void onRanInto(Car other) {
-		speed *= 0.5f;
-		crashSound.play();
-		if (!isRaceOver) {
+		crashes++;
+		table.speed[row] *= 0.5f;
+		context.sounds.play(CRASH_SOUND);
+		if (!table.isRaceOver[row]) {
 			health -= 0.1f;
 		}
 	}
@@ -1,10 +1,23 @@
 package ld28;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
 import ldtk.Camera;
 import ldtk.Font;
 import ldtk.Image;
 import ldtk.Kernel;
 import ldtk.State;
+import ldtk.Task;
+import ldtk.TickThread;
+import ldtk.Time;
+import ldtk.TripleBuffer;
 import ldtk.Tune;
 
 import com.badlogic.gdx.Application.ApplicationType;
@@ -12,10 +25,20 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Rectangle;
 
 public class Playing extends State {
 
+	private static final String TAG = "Playing";
+	private static final String REPLAY_FILE = "replays/last.replay";
+	private static final String SAVED_RACE_FILE = "saves/race.sav";
+	private static final int SAVED_RACE_BUFFER_SIZE = 64 * 1024;
+	private static final int FAST_FORWARD_SPEED = 16;
+	private static final int MAX_SIMULATION_SUBSTEPS = 5;
+	private static final int FIRST_RACE_FRAMES = 600;
+	private static final float SLOW_FRAME_TIME = 1.5f / 60.0f;
+
 	private final App app;
 	private Camera guiCam;
 	private Camera gameCam;
@@ -23,6 +46,52 @@ public class Playing extends State {
 	private float virtualHeight;
 	private WorldRenderer worldRenderer;
 	private World world;
+	private Time worldTime;
+	private long seed;
+	private ReplayRecorder recorder;
+	private Replay lastReplay;
+	private Task<Replay> replayPrefetch;
+	private boolean isReplaying;
+	private final Ghosts ghosts;
+	private final WorldSnapshot savedRace = new WorldSnapshot();
+	private ByteBuffer savedRaceBuffer;
+	private boolean isResuming;
+	private final CarFrame instantReplayFrame = new CarFrame(64);
+	private boolean isShowingInstantReplay;
+	private boolean wasRaceOver;
+	private volatile boolean isSkipRequested;
+	private volatile boolean isFastForwardRequested;
+	private boolean isSimulationThreaded;
+	private TickThread simulationThread;
+	private SampledInput sampledInput;
+	private QueuedSounds queuedSounds;
+	private TripleBuffer<RenderState> renderStates;
+	private final CarFrame drawFrame = new CarFrame(64);
+	private int firstRaceFrames;
+	private long lastDrawNanos;
+	private float firstRaceTotalTime;
+	private float firstRaceWorstTime;
+	private int firstRaceSlowFrames;
+	private int renderedLevel;
+	private final Executor prefetchExecutor = new Executor() {
+		@Override
+		public void execute(final Runnable command) {
+			// If the workers are busy then the World prepares the level itself when it starts.
+			Kernel.workers.submit(Playing.this, new Task<Void>() {
+				@Override
+				protected Void call() {
+					command.run();
+					return null;
+				}
+			});
+		}
+	};
+	private final Runnable simulation = new Runnable() {
+		@Override
+		public void run() {
+			tick();
+		}
+	};
 	private boolean isEscapePressed;
 	private boolean isBackPressed;
 	private Tune soundtrack;
@@ -34,14 +103,112 @@ public class Playing extends State {
 	public Playing(App app) {
 		this.app = app;
 		this.isTwoPlayer = false;
-		world = new World();
 		worldRenderer = new WorldRenderer();
+		ghosts = new Ghosts(World.numLevels());
+		savedRaceBuffer = ByteBuffer.allocateDirect(SAVED_RACE_BUFFER_SIZE);
 	}
 	
 	public void setTwoPlayer(boolean isTwoPlayer) {
 		this.isTwoPlayer = isTwoPlayer;
 	}
+
+	/**
+	 * Chooses whether the World ticks on its own thread. When it does, drawing a frame and ticking the World can
+	 * happen at the same time on different cores, and they only meet through a triple buffer of render states.
+	 * 
+	 * @param isSimulationThreaded true to tick the World on its own thread.
+	 */
+	public void setSimulationThreaded(boolean isSimulationThreaded) {
+		this.isSimulationThreaded = isSimulationThreaded;
+	}
+
+	/**
+	 * Starts loading the last race on a worker thread, if it hasn't been loaded already, so that it is ready to watch.
+	 * 
+	 * @param owner the state to load it on behalf of. Loading is cancelled if the state exits before it finishes.
+	 */
+	public void prefetchReplay(State owner) {
+		if (lastReplay != null || (replayPrefetch != null && !replayPrefetch.isCancelled())) {
+			return;
+		}
+		final File file = Gdx.files.local(REPLAY_FILE).file();
+		replayPrefetch = new Task<Replay>() {
+			@Override
+			protected Replay call() throws IOException {
+				return file.exists() ? Replay.read(file) : null;
+			}
+
+			@Override
+			protected void done(Replay replay) {
+				if (lastReplay == null) {
+					lastReplay = replay;
+				}
+				replayPrefetch = null;
+			}
+
+			@Override
+			protected void failed(Exception e) {
+				Gdx.app.error(TAG, "Failed to read replay", e);
+				replayPrefetch = null;
+			}
+		};
+		if (!Kernel.workers.submit(owner, replayPrefetch)) {
+			replayPrefetch = null;
+		}
+	}
+
+	/**
+	 * Tells the state to play back the last race when it is next entered.
+	 * 
+	 * @return true if there is a last race to play back, otherwise false.
+	 */
+	public boolean watchReplay() {
+		if (lastReplay == null) {
+			// It hasn't been prefetched yet, so load it now.
+			if (replayPrefetch != null) {
+				replayPrefetch.cancel();
+				replayPrefetch = null;
+			}
+			lastReplay = loadReplay();
+		}
+		isReplaying = lastReplay != null;
+		return isReplaying;
+	}
 	
+	/**
+	 * Loads the race that was saved when the app was last paused, if there is one, and tells the state to carry on
+	 * with it when it is next entered. The saved race is deleted as it is loaded so that a bad save can't stop the
+	 * game from starting.
+	 * 
+	 * @return true if there was a saved race, otherwise false.
+	 */
+	public boolean resumeSavedRace() {
+		File file = Gdx.files.local(SAVED_RACE_FILE).file();
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				savedRace.decode(buffer);
+			}
+			finally {
+				raf.close();
+			}
+			isResuming = true;
+		}
+		catch (IOException e) {
+			Gdx.app.error(TAG, "Failed to read saved race", e);
+		}
+		finally {
+			// Whatever went wrong, don't try the same save again next time.
+			file.delete();
+		}
+		return isResuming;
+	}
+
 	@Override
 	public void enter() {
 		Gdx.input.setCatchBackKey(true);
@@ -50,8 +217,73 @@ public class Playing extends State {
 		guiCam = Kernel.cameras.create("guiCam", virtualWidth, virtualHeight);
 		gameCam = Kernel.cameras.create("gameCam", virtualWidth, virtualHeight);
 		guiCam.setScissored(false);
+		// The world has its own clock and random number generator so that, given the kernel's fixed timestep, the same
+		// seed and inputs always produce the same race.
+		worldTime = new Time();
+		int[] keys = { World.PLAYER_ONE_KEY, World.PLAYER_TWO_KEY };
+		InputSource gameInput = new GameInput();
+		SoundSink sounds = new GameSounds();
+		if (isSimulationThreaded) {
+			// The simulation thread mustn't touch libGDX, so input is sampled for it and sounds are queued for us.
+			sampledInput = new SampledInput(gameInput, keys);
+			queuedSounds = new QueuedSounds(sounds);
+			gameInput = sampledInput;
+			sounds = queuedSounds;
+		}
+		InputSource input;
+		if (isResuming) {
+			// The input leading up to a saved race is gone, so a resumed race can't be recorded as a replay.
+			seed = 0;
+			isTwoPlayer = savedRace.isTwoPlayer;
+			input = gameInput;
+			recorder = null;
+		}
+		else if (isReplaying) {
+			seed = lastReplay.seed();
+			isTwoPlayer = lastReplay.isTwoPlayer();
+			input = lastReplay.input();
+			recorder = null;
+		}
+		else {
+			seed = MathUtils.random.nextLong();
+			recorder = new ReplayRecorder(gameInput, worldTime, seed, isTwoPlayer, keys);
+			input = recorder;
+		}
+		Context context = new Context(worldTime, input, sounds, new Rng(seed), new Broker());
+		world = new World(context);
+		world.setGhosts(ghosts);
 		world.init(isTwoPlayer);
-		worldRenderer.init(world, gameCam);
+		world.setPrefetchExecutor(prefetchExecutor);
+		if (isReplaying) {
+			world.setDroneCounts(lastReplay.droneCounts());
+			world.setRespondingOncePerContact(lastReplay.isRespondingOncePerContact());
+		}
+		else {
+			world.setDroneDensity(Quality.droneDensity());
+		}
+		worldRenderer.init(gameCam);
+		if (isResuming) {
+			world.restore(savedRace);
+			isResuming = false;
+		}
+		isShowingInstantReplay = false;
+		isSkipRequested = false;
+		isFastForwardRequested = false;
+		wasRaceOver = world.isLevelComplete() || world.isGameOver();
+		renderStates = new TripleBuffer<RenderState>(new RenderState(), new RenderState(), new RenderState());
+		renderedLevel = -1;
+		lastDrawNanos = 0;
+		if (world.level() >= 0) {
+			publish();
+		}
+		if (isSimulationThreaded) {
+			simulationThread = new TickThread("Simulation", simulation, Simulator.TICKS_PER_SECOND,
+					MAX_SIMULATION_SUBSTEPS);
+			simulationThread.start();
+		}
+		else {
+			simulationThread = null;
+		}
 		soundtrack = Kernel.tunes.get("music/soundtrack");
 		soundtrack.setLooping(true);
 		soundtrack.play();
@@ -61,12 +293,42 @@ public class Playing extends State {
 
 	@Override
 	public void exit() {
+		if (simulationThread != null) {
+			simulationThread.stop();
+			simulationThread = null;
+		}
+		if (recorder != null) {
+			lastReplay = recorder.replay(world.stateHash(), world.droneCounts(), world.isRespondingOncePerContact());
+			saveReplay(lastReplay);
+			recorder = null;
+		}
+		isReplaying = false;
+		Gdx.files.local(SAVED_RACE_FILE).file().delete();
 		soundtrack.stop();
 		Gdx.input.setCatchBackKey(false);
 		gameCam.dispose();
 		guiCam.dispose();
 	}
 
+	@Override
+	public void pause() {
+		if (simulationThread != null) {
+			simulationThread.stop();
+		}
+		// Watching a replay isn't worth saving, as the replay itself is already on disk.
+		if (!isReplaying) {
+			saveRace();
+		}
+	}
+
+	@Override
+	public void resume() {
+		lastDrawNanos = 0;
+		if (simulationThread != null) {
+			simulationThread.start();
+		}
+	}
+
 	@Override
 	public void update() {
 		boolean wasEscapePressed = isEscapePressed;
@@ -79,16 +341,196 @@ public class Playing extends State {
 		}
 		boolean wasSpacePressed = isSpacePressed;
 		isSpacePressed = Gdx.input.isKeyPressed(Keys.SPACE);
-		boolean justTouched = Gdx.input.justTouched();
-		if (((wasSpacePressed && !isSpacePressed) || justTouched) && world.canQuit()) {
-			app.requestMenu();
+		boolean justTouched = Kernel.touches.justTouched();
+		boolean isContinuePressed = (wasSpacePressed && !isSpacePressed) || justTouched;
+		RenderState state = renderStates.acquire();
+		if (isContinuePressed) {
+			if (state.isShowingInstantReplay) {
+				isSkipRequested = true;
+			}
+			else if (state.canQuit) {
+				app.requestMenu();
+				return;
+			}
+		}
+		isFastForwardRequested = isReplaying && Gdx.input.isKeyPressed(Keys.F);
+		world.setDroneDensity(Quality.droneDensity());
+
+		if (simulationThread != null) {
+			sampledInput.sample();
+			queuedSounds.flush();
+		}
+		else {
+			tick();
+		}
+	}
+
+	/**
+	 * Advances the race by one tick and publishes the result for drawing. This runs on the simulation thread if there
+	 * is one.
+	 */
+	private void tick() {
+		if (isShowingInstantReplay) {
+			// The world is frozen while the instant replay plays back one recorded tick per update.
+			SnapshotRing instantReplay = world.instantReplay();
+			if (isSkipRequested || !instantReplay.hasNext()) {
+				isShowingInstantReplay = false;
+			}
+			else {
+				instantReplay.next(world.track(), instantReplayFrame);
+			}
+			isSkipRequested = false;
+			publish();
 			return;
 		}
-		int oldLevel = world.level();
-		world.update();
-		if (world.level() != oldLevel) {
-			worldRenderer.onLevelStart();
+
+		// When watching a replay, fast forward by running several ticks per update. Only the last one gets drawn.
+		int ticks = isFastForwardRequested ? FAST_FORWARD_SPEED : 1;
+		for (int i = 0; i < ticks; i++) {
+			if (isReplaying) {
+				worldTime.delta = lastReplay.tickLength();
+			}
+			else if (simulationThread != null) {
+				worldTime.delta = 1.0f / Simulator.TICKS_PER_SECOND;
+			}
+			else {
+				worldTime.delta = Kernel.time.delta;
+			}
+			worldTime.time += worldTime.delta;
+			world.update();
+			if (startInstantReplayIfRaceOver()) {
+				break;
+			}
+		}
+		publish();
+	}
+
+	private void publish() {
+		RenderState state = renderStates.back();
+		if (isShowingInstantReplay) {
+			state.capture(world, instantReplayFrame);
+		}
+		else {
+			state.capture(world);
 		}
+		state.publishNanos = System.nanoTime();
+		renderStates.publish();
+	}
+
+	/**
+	 * Measures the frame times at the start of the first race, which is when code that hasn't been compiled yet causes
+	 * stutters. They're logged along with how long the warm-up took, so that runs with and without it can be compared.
+	 */
+	private void measureFirstRace() {
+		long now = System.nanoTime();
+		if (lastDrawNanos != 0) {
+			float frameTime = (now - lastDrawNanos) / 1000000000.0f;
+			firstRaceTotalTime += frameTime;
+			firstRaceWorstTime = Math.max(firstRaceWorstTime, frameTime);
+			if (frameTime > SLOW_FRAME_TIME) {
+				firstRaceSlowFrames++;
+			}
+			firstRaceFrames++;
+			if (firstRaceFrames == FIRST_RACE_FRAMES) {
+				Gdx.app.log(TAG, String.format("First race: mean frame %.1fms, worst %.1fms, %d of %d frames slow, " +
+						"warm-up %.0fms", firstRaceTotalTime * 1000 / FIRST_RACE_FRAMES, firstRaceWorstTime * 1000,
+						firstRaceSlowFrames, FIRST_RACE_FRAMES, Kernel.warmUpTime() * 1000));
+			}
+		}
+		lastDrawNanos = now;
+	}
+
+	// A player crashing out of a one player game ends it, so that shows the replay. In a two player game the other
+	// player is still racing, and the world is frozen while the replay plays, so it waits for the race to end.
+	private boolean startInstantReplayIfRaceOver() {
+		boolean isRaceOver = world.isLevelComplete() || world.isGameOver();
+		boolean isJustOver = isRaceOver && !wasRaceOver;
+		wasRaceOver = isRaceOver;
+		if (isJustOver && world.instantReplay().size() > 0) {
+			world.instantReplay().rewind();
+			world.instantReplay().next(world.track(), instantReplayFrame);
+			isShowingInstantReplay = true;
+			isSkipRequested = false;
+		}
+		return isShowingInstantReplay;
+	}
+
+	private Replay loadReplay() {
+		File file = Gdx.files.local(REPLAY_FILE).file();
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			return Replay.read(file);
+		}
+		catch (IOException e) {
+			Gdx.app.error(TAG, "Failed to read replay", e);
+			return null;
+		}
+	}
+
+	private void saveReplay(final Replay replay) {
+		final File file = Gdx.files.local(REPLAY_FILE).file();
+		file.getParentFile().mkdirs();
+		// Encoding and writing happen on a worker. The task belongs to no state as it must finish even though we've
+		// exited.
+		Task<Void> task = new Task<Void>() {
+			@Override
+			protected Void call() throws IOException {
+				replay.write(file);
+				return null;
+			}
+
+			@Override
+			protected void failed(Exception e) {
+				Gdx.app.error(TAG, "Failed to write replay", e);
+			}
+		};
+		if (!Kernel.workers.submit(task)) {
+			try {
+				replay.write(file);
+			}
+			catch (IOException e) {
+				Gdx.app.error(TAG, "Failed to write replay", e);
+			}
+		}
+	}
+
+	/**
+	 * Saves the race so that it can be carried on after the process has been killed. This is called while the app is
+	 * being paused, when Android gives us very little time, so it encodes into a preallocated direct buffer and
+	 * writes it with a single channel write. It doesn't force the write through to storage. The data is in the OS's
+	 * page cache once the write returns, and that survives the process being killed.
+	 */
+	private void saveRace() {
+		long startTime = System.nanoTime();
+		world.save(savedRace);
+		int size = savedRace.encodedSize();
+		if (savedRaceBuffer.capacity() < size) {
+			savedRaceBuffer = ByteBuffer.allocateDirect(Math.max(size, SAVED_RACE_BUFFER_SIZE));
+		}
+		savedRaceBuffer.clear();
+		savedRace.encode(savedRaceBuffer);
+		savedRaceBuffer.flip();
+		File file = Gdx.files.local(SAVED_RACE_FILE).file();
+		file.getParentFile().mkdirs();
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				FileChannel channel = out.getChannel();
+				while (savedRaceBuffer.hasRemaining()) {
+					channel.write(savedRaceBuffer);
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			Gdx.app.error(TAG, "Failed to save race", e);
+			return;
+		}
+		Gdx.app.log(TAG, "Saved race (" + size + " bytes) in " + (System.nanoTime() - startTime) / 1000 + "us");
 	}
 
 	@Override
@@ -97,78 +539,99 @@ public class Playing extends State {
 		Gdx.gl.glClearColor(0.0f, 0.25f, 0.0f, 1.0f);
 		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
 		
-		worldRenderer.draw();
+		RenderState state = renderStates.acquire();
+		if (state.levelName == null) {
+			// Nothing has been published yet.
+			return;
+		}
+		if (state.level != renderedLevel) {
+			worldRenderer.onLevelStart(state.level, state.track);
+			renderedLevel = state.level;
+		}
+		else if (state.nextTrack != null) {
+			worldRenderer.prefetchLevel(state.level + 1, state.nextTrack);
+		}
+		float alpha = Kernel.time.alpha;
+		if (simulationThread != null) {
+			alpha = Math.min(1.0f, (System.nanoTime() - state.publishNanos) / (float) simulationThread.tickNanos());
+		}
+		worldRenderer.draw(state.cars(alpha, drawFrame));
+		if (firstRaceFrames < FIRST_RACE_FRAMES) {
+			measureFirstRace();
+		}
 		guiCam.activate();
+		// Flashing text stays on when the governor has turned HUD effects off.
+		boolean isFlashOn = !Quality.isHudAnimated() || Kernel.time.seconds % 0.5 < 0.25;
 		
 		// Draw player one's info.
-		String scoreString = String.format("Player One: %010d", world.player1Score());
+		String scoreString = String.format("Player One: %010d", state.player1Score);
 		scoreFont.draw(scoreString,
 				-guiCam.windowWidth() / 2,
 				guiCam.windowHeight() / 2 - scoreFont.height(),
 				Color.YELLOW);
-		int lap = world.player1Lap();
-		int laps = world.laps();
+		int lap = state.player1Lap;
+		int laps = state.laps;
 		String lapString;
 		if (lap > laps) {
 			lapString = "*** FINISHED ***";
 		}
-		else if (world.player1Health() < 0) {
+		else if (state.player1Health < 0) {
 			lapString = "*** CRASHED ***";
 		}
 		else {
 			lapString = String.format("Lap %d/%d",  lap, laps);
 		}
-		if (lapString.charAt(0) != '*' || Kernel.time.time % 0.5f < 0.25f) {
+		if (lapString.charAt(0) != '*' || isFlashOn) {
 			scoreFont.draw(lapString,
 					-guiCam.windowWidth() / 2,
 					guiCam.windowHeight() / 2 - 2 * scoreFont.height(),
 					Color.YELLOW);
 		}
-		int numBars = (int) ((world.player1Health() * 10) + 0.5f);
+		int numBars = (int) ((state.player1Health * 10) + 0.5f);
 		for (int i = 0; i < numBars; i++) {
 			greenBarImage.draw(-guiCam.windowWidth() / 2 + 4 + 16 * i, guiCam.windowHeight() / 2 - 80);
 		}
 
 		// Draw player two's info if required.
 		if (isTwoPlayer) {
-			scoreString = String.format("Player Two: %010d", world.player2Score());
+			scoreString = String.format("Player Two: %010d", state.player2Score);
 			Rectangle bounds = scoreFont.bounds(scoreString);
 			scoreFont.draw(scoreString,
 					guiCam.windowWidth() / 2 - bounds.width,
 					guiCam.windowHeight() / 2 - scoreFont.height(),
 					Color.YELLOW);
-			lap = world.player2Lap();
+			lap = state.player2Lap;
 			if (lap > laps) {
 				lapString = "*** FINISHED ***";
 			}
-			else if (world.player2Health() < 0) {
+			else if (state.player2Health < 0) {
 				lapString = "*** CRASHED ***";
 			}
 			else {
 				lapString = String.format("Lap %d/%d",  lap, laps);
 			}
 			bounds = scoreFont.bounds(lapString);
-			if (lapString.charAt(0) != '*' || Kernel.time.time % 0.5f < 0.25f) {
+			if (lapString.charAt(0) != '*' || isFlashOn) {
 				scoreFont.draw(lapString,
 						guiCam.windowWidth() / 2 - bounds.width,
 						guiCam.windowHeight() / 2 - 2 * scoreFont.height(),
 						Color.YELLOW);
 			}
-			numBars = (int) ((world.player2Health() * 10) + 0.5f);
+			numBars = (int) ((state.player2Health * 10) + 0.5f);
 			for (int i = 0; i < numBars; i++) {
 				greenBarImage.draw(guiCam.windowWidth() / 2 - 4 - 16 * i, guiCam.windowHeight() / 2 - 80);
 			}
 		}
 		
 		// Draw the race over text if required.
-		if (world.isGameOver()) {
+		if (state.isGameOver) {
 			String gameOverString = "*** RACE OVER ***";
 			Rectangle bounds = scoreFont.bounds(gameOverString);
 			scoreFont.draw(gameOverString,
 					-bounds.width / 2,
 					-bounds.height / 2,
 					Color.YELLOW);
-			if (world.canQuit()) {
+			if (state.canQuit) {
 				boolean isOnAndroid = Gdx.app.getType() == ApplicationType.Android;
 				if (isOnAndroid) {
 					gameOverString = "tap to continue";
@@ -185,14 +648,14 @@ public class Playing extends State {
 		}
 		
 		// Draw the game won text if required.
-		if (world.isGameWon()) {
+		if (state.isGameWon) {
 			String gameWonString = "*** RACE COMPLETED ***";
 			Rectangle bounds = scoreFont.bounds(gameWonString);
 			scoreFont.draw(gameWonString,
 					-bounds.width / 2,
 					-bounds.height / 2,
 					Color.YELLOW);
-			if (world.canQuit()) {
+			if (state.canQuit) {
 				boolean isOnAndroid = Gdx.app.getType() == ApplicationType.Android;
 				if (isOnAndroid) {
 					gameWonString = "tap to continue";
@@ -208,8 +671,18 @@ public class Playing extends State {
 			}
 		}
 		
+		// Draw the instant replay caption if required.
+		if (state.isShowingInstantReplay && isFlashOn) {
+			String replayString = "*** INSTANT REPLAY ***";
+			Rectangle bounds = scoreFont.bounds(replayString);
+			scoreFont.draw(replayString,
+					-bounds.width / 2,
+					-guiCam.windowHeight() / 2 + 2 * bounds.height,
+					Color.YELLOW);
+		}
+		
 		// Draw the track name.
-		String nameString = world.levelName();
+		String nameString = state.levelName;
 		Rectangle bounds = scoreFont.bounds(nameString);
 		scoreFont.draw(nameString,
 				-bounds.width / 2,
@@ -0,0 +1,63 @@
+package ld28;
+
+import ldtk.Kernel;
+
+/**
+ * What each of the governor's quality levels means for this game. Level 3 is everything on. Each level down gives up
+ * something that costs frame time: first the HUD's blinking and bobbing, then the obscured car pass and some of the
+ * computer cars, and finally more of the track's tessellation and more cars.
+ */
+class Quality {
+
+	/**
+	 * The number of quality levels.
+	 */
+	public static final int LEVELS = 4;
+
+	/**
+	 * The largest number of quads that any level draws per track piece.
+	 */
+	public static final int MAX_QUADS_PER_PIECE = 6;
+
+	private static final int[] QUADS_PER_PIECE = { 2, 3, 4, 6 };
+	private static final float[] DRONE_DENSITY = { 0.5f, 0.75f, 1.0f, 1.0f };
+
+	private Quality() {
+	}
+
+	/**
+	 * Returns the number of quads to draw along each track piece. Changes take effect when the next track is built.
+	 * 
+	 * @return the number of quads.
+	 */
+	public static int quadsPerPiece() {
+		return QUADS_PER_PIECE[Kernel.governor.level()];
+	}
+
+	/**
+	 * Returns true if cars should be drawn faintly on top of everything, so that they can be seen under bridges.
+	 * 
+	 * @return true to draw obscured cars.
+	 */
+	public static boolean isObscuredPassOn() {
+		return Kernel.governor.level() >= 2;
+	}
+
+	/**
+	 * Returns the fraction of each level's computer cars to race. Changes take effect from the next level.
+	 * 
+	 * @return the fraction, from 0 to 1.
+	 */
+	public static float droneDensity() {
+		return DRONE_DENSITY[Kernel.governor.level()];
+	}
+
+	/**
+	 * Returns true if the HUD should blink and bob.
+	 * 
+	 * @return true for HUD effects.
+	 */
+	public static boolean isHudAnimated() {
+		return Kernel.governor.level() >= 3;
+	}
+}
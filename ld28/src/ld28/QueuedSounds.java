@@ -0,0 +1,32 @@
+package ld28;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sounds that are played on one thread but have to be started on another. The simulation thread queues them and the
+ * game thread plays them when it flushes the queue.
+ */
+class QueuedSounds implements SoundSink {
+
+	private final SoundSink sounds;
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+
+	public QueuedSounds(SoundSink sounds) {
+		this.sounds = sounds;
+	}
+
+	@Override
+	public void play(String name) {
+		queue.offer(name);
+	}
+
+	/**
+	 * Plays all of the queued sounds. Call this from the thread that owns the real sounds.
+	 */
+	public void flush() {
+		String name;
+		while ((name = queue.poll()) != null) {
+			sounds.play(name);
+		}
+	}
+}
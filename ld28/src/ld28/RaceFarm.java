@@ -0,0 +1,176 @@
+package ld28;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many complete, independently seeded, headless races across all of the machine's cores and aggregates the
+ * results. Each race has its own Simulator, so nothing on the simulation path is shared between threads.
+ */
+public class RaceFarm {
+
+	/**
+	 * Creates the input for a race.
+	 */
+	public interface Inputs {
+		/**
+		 * Creates the input for the race with the given seed.
+		 * 
+		 * @param seed the race's seed.
+		 * @return the input source.
+		 */
+		public InputSource create(long seed);
+	}
+
+	/**
+	 * Players who press their buttons at random, roughly once a second.
+	 */
+	public static final Inputs RANDOM_INPUTS = new Inputs() {
+		@Override
+		public InputSource create(long seed) {
+			int[] keys = { World.PLAYER_ONE_KEY };
+			return new RandomInput(~seed, keys, 1.0f, Simulator.TICKS_PER_SECOND);
+		}
+	};
+
+	private final int numThreads;
+	private final Inputs inputs;
+	private final int maxTicksPerRace;
+	private World.CollisionMode collisionMode = World.CollisionMode.SHAPES;
+
+	/**
+	 * Creates a race farm.
+	 * 
+	 * @param numThreads the number of worker threads.
+	 * @param inputs creates the input for each race.
+	 * @param maxTicksPerRace the number of ticks after which a race is abandoned.
+	 */
+	public RaceFarm(int numThreads, Inputs inputs, int maxTicksPerRace) {
+		this.numThreads = numThreads;
+		this.inputs = inputs;
+		this.maxTicksPerRace = maxTicksPerRace;
+	}
+
+	/**
+	 * Chooses how the races decide which cars are touching, so that the modes can be compared.
+	 * 
+	 * @param collisionMode the mode.
+	 */
+	public void setCollisionMode(World.CollisionMode collisionMode) {
+		this.collisionMode = collisionMode;
+	}
+
+	/**
+	 * Runs races with seeds from firstSeed to firstSeed + numRaces - 1.
+	 * 
+	 * @param numRaces the number of races.
+	 * @param firstSeed the seed of the first race.
+	 * @return the aggregated results.
+	 */
+	public RaceStats run(final int numRaces, final long firstSeed) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			// Workers claim races one at a time so that a thread that draws short races isn't left idle.
+			final AtomicInteger nextRace = new AtomicInteger();
+			List<Future<RaceStats>> futures = new ArrayList<Future<RaceStats>>();
+			for (int i = 0; i < numThreads; i++) {
+				futures.add(executor.submit(new Callable<RaceStats>() {
+					@Override
+					public RaceStats call() {
+						RaceStats stats = new RaceStats();
+						int race;
+						while ((race = nextRace.getAndIncrement()) < numRaces) {
+							runRace(firstSeed + race, stats);
+						}
+						return stats;
+					}
+				}));
+			}
+			RaceStats total = new RaceStats();
+			for (Future<RaceStats> future : futures) {
+				try {
+					total.merge(future.get());
+				}
+				catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			return total;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a single one player game from the first level until it is won, lost or abandoned.
+	 * 
+	 * @param seed the race's seed.
+	 * @param stats where to record the results.
+	 */
+	void runRace(long seed, RaceStats stats) {
+		Simulator simulator = new Simulator(inputs.create(seed), seed);
+		World world = simulator.world();
+		world.setCollisionMode(collisionMode);
+		simulator.start(false);
+		int level = -1;
+		int lap = 0;
+		long levelStart = 0;
+		boolean isLevelOver = false;
+		while (!world.isGameOver() && !world.isGameWon() && simulator.ticks() < maxTicksPerRace) {
+			simulator.step();
+			if (world.level() != level) {
+				level = world.level();
+				lap = 1;
+				levelStart = simulator.ticks();
+				isLevelOver = false;
+				stats.addLevelStarted(level);
+			}
+			if (isLevelOver) {
+				continue;
+			}
+			int currentLap = world.player1Lap();
+			if (currentLap != lap) {
+				stats.addLapCompleted(level, lap - 1, world.player1Health());
+				lap = currentLap;
+			}
+			if (world.isLevelComplete()) {
+				isLevelOver = true;
+				stats.addLevelFinished(level, (int) (simulator.ticks() - levelStart), world.player1Crashes());
+			}
+			else if (world.isGameOver()) {
+				isLevelOver = true;
+				stats.addLevelLost(level, world.player1Crashes());
+			}
+		}
+		stats.addRace(simulator.ticks());
+	}
+
+	/**
+	 * Runs a batch of races and prints the results. Takes an optional number of races, an optional first seed, an
+	 * optional number of threads, which defaults to the number of available processors, and an optional collision
+	 * mode, which defaults to SHAPES.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int numRaces = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		long firstSeed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+		int numThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int maxTicks = (int) (30 * 60 * Simulator.TICKS_PER_SECOND);
+		RaceFarm farm = new RaceFarm(numThreads, RANDOM_INPUTS, maxTicks);
+		if (args.length > 3) {
+			farm.setCollisionMode(World.CollisionMode.valueOf(args[3].toUpperCase()));
+		}
+		long startTime = System.nanoTime();
+		RaceStats stats = farm.run(numRaces, firstSeed);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		stats.print(System.out, Simulator.TICKS_PER_SECOND);
+		System.out.printf("%d races (%d ticks) on %d threads in %.3fs: %.1f races/s, %.0f ticks/s%n", stats.races(),
+				stats.ticks(), numThreads, seconds, stats.races() / seconds, stats.ticks() / seconds);
+	}
+}
@@ -0,0 +1,125 @@
+package ld28;
+
+import java.io.PrintStream;
+
+/**
+ * Aggregated results from many races, broken down by level. A RaceStats is not thread-safe, so each thread should
+ * gather its own and then merge them.
+ */
+public class RaceStats {
+
+	private static final int MAX_LAPS = 8;
+
+	private final int numLevels;
+	private int races;
+	private long ticks;
+	private final int[] started;
+	private final int[] finished;
+	private final int[] lost;
+	private final long[] finishTicks;
+	private final int[] bestFinishTicks;
+	private final long[] crashes;
+	private final double[][] lapHealth;
+	private final int[][] lapCount;
+
+	public RaceStats() {
+		numLevels = World.numLevels();
+		started = new int[numLevels];
+		finished = new int[numLevels];
+		lost = new int[numLevels];
+		finishTicks = new long[numLevels];
+		bestFinishTicks = new int[numLevels];
+		crashes = new long[numLevels];
+		lapHealth = new double[numLevels][MAX_LAPS];
+		lapCount = new int[numLevels][MAX_LAPS];
+		for (int i = 0; i < numLevels; i++) {
+			bestFinishTicks[i] = Integer.MAX_VALUE;
+		}
+	}
+
+	public int races() {
+		return races;
+	}
+
+	public long ticks() {
+		return ticks;
+	}
+
+	void addRace(long raceTicks) {
+		races++;
+		ticks += raceTicks;
+	}
+
+	void addLevelStarted(int level) {
+		started[level]++;
+	}
+
+	void addLevelFinished(int level, int levelTicks, int levelCrashes) {
+		finished[level]++;
+		finishTicks[level] += levelTicks;
+		bestFinishTicks[level] = Math.min(bestFinishTicks[level], levelTicks);
+		crashes[level] += levelCrashes;
+	}
+
+	void addLevelLost(int level, int levelCrashes) {
+		lost[level]++;
+		crashes[level] += levelCrashes;
+	}
+
+	void addLapCompleted(int level, int lap, float health) {
+		if (lap < MAX_LAPS) {
+			lapHealth[level][lap] += health;
+			lapCount[level][lap]++;
+		}
+	}
+
+	/**
+	 * Adds another set of results to this one.
+	 * 
+	 * @param other the other results.
+	 */
+	public void merge(RaceStats other) {
+		races += other.races;
+		ticks += other.ticks;
+		for (int i = 0; i < numLevels; i++) {
+			started[i] += other.started[i];
+			finished[i] += other.finished[i];
+			lost[i] += other.lost[i];
+			finishTicks[i] += other.finishTicks[i];
+			bestFinishTicks[i] = Math.min(bestFinishTicks[i], other.bestFinishTicks[i]);
+			crashes[i] += other.crashes[i];
+			for (int j = 0; j < MAX_LAPS; j++) {
+				lapHealth[i][j] += other.lapHealth[i][j];
+				lapCount[i][j] += other.lapCount[i][j];
+			}
+		}
+	}
+
+	/**
+	 * Prints a per-level summary of the results.
+	 * 
+	 * @param out where to print the summary.
+	 * @param ticksPerSecond the tick rate of the races, for converting ticks to seconds.
+	 */
+	public void print(PrintStream out, float ticksPerSecond) {
+		out.printf("%-18s %8s %8s %8s %9s %9s %8s  %s%n", "level", "started", "finished", "lost", "mean(s)", "best(s)",
+				"crashes", "mean health after each lap");
+		for (int i = 0; i < numLevels; i++) {
+			int played = finished[i] + lost[i];
+			double meanFinish = (finished[i] > 0) ? finishTicks[i] / (double) finished[i] / ticksPerSecond : 0;
+			double bestFinish = (finished[i] > 0) ? bestFinishTicks[i] / ticksPerSecond : 0;
+			double meanCrashes = (played > 0) ? crashes[i] / (double) played : 0;
+			StringBuilder curve = new StringBuilder();
+			for (int j = 0; j < World.laps(i) && j < MAX_LAPS; j++) {
+				if (lapCount[i][j] > 0) {
+					curve.append(String.format(" %5.2f", lapHealth[i][j] / lapCount[i][j]));
+				}
+				else {
+					curve.append("     -");
+				}
+			}
+			out.printf("%-18s %8d %8d %8d %9.1f %9.1f %8.1f %s%n", World.levelName(i), started[i], finished[i],
+					lost[i], meanFinish, bestFinish, meanCrashes, curve);
+		}
+	}
+}
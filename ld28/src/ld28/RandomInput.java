@@ -0,0 +1,54 @@
+package ld28;
+
+/**
+ * Input from one-button players who press and release their buttons at random.
+ */
+public class RandomInput implements InputSource {
+
+	private final Rng rng;
+	private final int[] keys;
+	private final boolean[] isPressed;
+	private final float pressChance;
+	private final float releaseChance;
+
+	/**
+	 * Creates random input for the given keys.
+	 * 
+	 * @param seed the seed for the input's own random number generator.
+	 * @param keys the keys that the players press.
+	 * @param pressesPerSecond the average number of presses per second for each key.
+	 * @param ticksPerSecond the number of ticks per second.
+	 */
+	public RandomInput(long seed, int[] keys, float pressesPerSecond, float ticksPerSecond) {
+		this.rng = new Rng(seed);
+		this.keys = keys;
+		this.isPressed = new boolean[keys.length];
+		this.pressChance = pressesPerSecond / ticksPerSecond;
+		this.releaseChance = 0.5f;
+	}
+
+	@Override
+	public void poll() {
+		for (int i = 0; i < keys.length; i++) {
+			float chance = isPressed[i] ? releaseChance : pressChance;
+			if (rng.random() < chance) {
+				isPressed[i] = !isPressed[i];
+			}
+		}
+	}
+
+	@Override
+	public boolean isKeyPressed(int key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key) {
+				return isPressed[i];
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean justTouched() {
+		return false;
+	}
+}
@@ -0,0 +1,83 @@
+package ld28;
+
+/**
+ * Everything that Playing needs to draw a frame, copied out of the World so that the World can carry on ticking on
+ * another thread while the frame is drawn. The cars are held at both the previous and the current tick so that the
+ * renderer can interpolate between them.
+ */
+class RenderState {
+	public final CarFrame previousCars = new CarFrame(64);
+	public final CarFrame cars = new CarFrame(64);
+	public long publishNanos;
+	public int level;
+	public TrackBuilder track;
+	public TrackBuilder nextTrack;
+	public String levelName;
+	public int laps;
+	public long player1Score;
+	public long player2Score;
+	public int player1Lap;
+	public int player2Lap;
+	public float player1Health;
+	public float player2Health;
+	public boolean isGameOver;
+	public boolean isGameWon;
+	public boolean canQuit;
+	public boolean isShowingInstantReplay;
+
+	/**
+	 * Captures the World as it is now.
+	 * 
+	 * @param world the World.
+	 */
+	public void capture(World world) {
+		previousCars.capture(world.cars(), world.ghost(), 0.0f);
+		cars.capture(world.cars(), world.ghost(), 1.0f);
+		isShowingInstantReplay = false;
+		captureHud(world);
+	}
+
+	/**
+	 * Captures a frame of an instant replay, along with the World's heads-up display.
+	 * 
+	 * @param world the World.
+	 * @param frame the instant replay frame.
+	 */
+	public void capture(World world, CarFrame frame) {
+		previousCars.set(frame);
+		cars.set(frame);
+		isShowingInstantReplay = true;
+		captureHud(world);
+	}
+
+	/**
+	 * Interpolates the cars between the previous tick and the current tick.
+	 * 
+	 * @param alpha how far to interpolate, from 0 (the previous tick) to 1 (the current tick).
+	 * @param out the frame to interpolate into.
+	 * @return the interpolated frame.
+	 */
+	public CarFrame cars(float alpha, CarFrame out) {
+		out.interpolate(previousCars, cars, alpha);
+		return out;
+	}
+
+	private void captureHud(World world) {
+		level = world.level();
+		track = world.track();
+		nextTrack = world.nextTrack();
+		levelName = world.levelName();
+		laps = world.laps();
+		player1Score = world.player1Score();
+		player1Lap = world.player1Lap();
+		player1Health = world.player1Health();
+		if (world.isTwoPlayer()) {
+			player2Score = world.player2Score();
+			player2Lap = world.player2Lap();
+			player2Health = world.player2Health();
+		}
+		isGameOver = world.isGameOver();
+		isGameWon = world.isGameWon();
+		canQuit = world.canQuit();
+	}
+}
@@ -0,0 +1,337 @@
+package ld28;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A recorded race. A race is completely determined by its random seed, its tick length and the players' input, so
+ * that is all that a replay holds. The input is stored as the ticks on which each key changed state and on which the
+ * screen was touched, delta-encoded as varints, so a whole game takes a few hundred bytes. The number of computer cars
+ * on each level is stored too, as slow devices race fewer of them, and so is whether cars responded to collisions
+ * once per contact or on every tick that they touched.
+ */
+public class Replay {
+
+	private static final int MAGIC = 0x4c443238;	// "LD28"
+	private static final int VERSION = 3;
+	private static final int NO_DRONE_COUNTS_VERSION = 1;
+	private static final int NO_CONTACTS_VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 1 + 8 + 1 + 4 + 8;
+
+	private final long seed;
+	private final boolean isTwoPlayer;
+	private final float tickLength;
+	private final int ticks;
+	private final long finalHash;
+	private final int[] keys;
+	private final int[][] keyTicks;
+	private final int[] touchTicks;
+	private final int[] droneCounts;
+	private final boolean isRespondingOncePerContact;
+
+	Replay(long seed, boolean isTwoPlayer, float tickLength, int ticks, long finalHash, int[] keys, int[][] keyTicks,
+			int[] touchTicks, int[] droneCounts, boolean isRespondingOncePerContact) {
+		this.seed = seed;
+		this.isTwoPlayer = isTwoPlayer;
+		this.tickLength = tickLength;
+		this.ticks = ticks;
+		this.finalHash = finalHash;
+		this.keys = keys;
+		this.keyTicks = keyTicks;
+		this.touchTicks = touchTicks;
+		this.droneCounts = droneCounts;
+		this.isRespondingOncePerContact = isRespondingOncePerContact;
+	}
+
+	public long seed() {
+		return seed;
+	}
+
+	public boolean isTwoPlayer() {
+		return isTwoPlayer;
+	}
+
+	public float tickLength() {
+		return tickLength;
+	}
+
+	/**
+	 * Returns the number of ticks in the replay.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public int ticks() {
+		return ticks;
+	}
+
+	/**
+	 * Returns the World's state hash at the end of the recording.
+	 * 
+	 * @return the hash.
+	 */
+	public long finalHash() {
+		return finalHash;
+	}
+
+	/**
+	 * Returns the number of computer cars on each level of the recording. Levels past the end get all of their cars.
+	 * 
+	 * @return the counts.
+	 */
+	public int[] droneCounts() {
+		return droneCounts;
+	}
+
+	/**
+	 * Returns true if cars responded to collisions only when they first touched.
+	 * 
+	 * @return true if cars responded once per contact.
+	 */
+	public boolean isRespondingOncePerContact() {
+		return isRespondingOncePerContact;
+	}
+
+	/**
+	 * Creates an input source that plays back the recorded input.
+	 * 
+	 * @return the input source.
+	 */
+	public InputSource input() {
+		return new ScriptedInput(keys, keyTicks, touchTicks);
+	}
+
+	/**
+	 * Creates a headless simulator that will play back this replay, and starts its game.
+	 * 
+	 * @return the simulator.
+	 */
+	public Simulator simulator() {
+		Simulator simulator = new Simulator(input(), seed);
+		simulator.setTickLength(tickLength);
+		simulator.world().setDroneCounts(droneCounts);
+		simulator.world().setRespondingOncePerContact(isRespondingOncePerContact);
+		simulator.start(isTwoPlayer);
+		return simulator;
+	}
+
+	/**
+	 * Returns the number of bytes that this replay takes when encoded.
+	 * 
+	 * @return the encoded size in bytes.
+	 */
+	public int encodedSize() {
+		int size = HEADER_SIZE + varintSize(ticks) + varintSize(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			size += varintSize(keys[i]) + ticksSize(keyTicks[i]);
+		}
+		size += ticksSize(touchTicks) + varintSize(droneCounts.length);
+		for (int i = 0; i < droneCounts.length; i++) {
+			size += varintSize(droneCounts[i]);
+		}
+		return size + 1;
+	}
+
+	/**
+	 * Encodes this replay into a buffer.
+	 * 
+	 * @param buffer the buffer, which must have at least encodedSize() bytes remaining.
+	 */
+	public void encode(ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.put((byte) VERSION);
+		buffer.putLong(seed);
+		buffer.put((byte) (isTwoPlayer ? 1 : 0));
+		buffer.putFloat(tickLength);
+		buffer.putLong(finalHash);
+		putVarint(buffer, ticks);
+		putVarint(buffer, keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			putVarint(buffer, keys[i]);
+			putTicks(buffer, keyTicks[i]);
+		}
+		putTicks(buffer, touchTicks);
+		putVarint(buffer, droneCounts.length);
+		for (int i = 0; i < droneCounts.length; i++) {
+			putVarint(buffer, droneCounts[i]);
+		}
+		buffer.put((byte) (isRespondingOncePerContact ? 1 : 0));
+	}
+
+	/**
+	 * Decodes a replay from a buffer.
+	 * 
+	 * @param buffer the buffer.
+	 * @return the replay.
+	 * @throws IOException if the buffer doesn't hold a valid replay.
+	 */
+	public static Replay decode(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a replay");
+			}
+			int version = buffer.get();
+			if (version < NO_DRONE_COUNTS_VERSION || version > VERSION) {
+				throw new IOException("Unsupported replay version: " + version);
+			}
+			long seed = buffer.getLong();
+			boolean isTwoPlayer = buffer.get() != 0;
+			float tickLength = buffer.getFloat();
+			long finalHash = buffer.getLong();
+			int ticks = getVarint(buffer);
+			int numKeys = getVarint(buffer);
+			int[] keys = new int[numKeys];
+			int[][] keyTicks = new int[numKeys][];
+			for (int i = 0; i < numKeys; i++) {
+				keys[i] = getVarint(buffer);
+				keyTicks[i] = getTicks(buffer);
+			}
+			int[] touchTicks = getTicks(buffer);
+			int[] droneCounts;
+			if (version == NO_DRONE_COUNTS_VERSION) {
+				// Older replays were all recorded with every computer car.
+				droneCounts = new int[0];
+			}
+			else {
+				int numLevels = getVarint(buffer);
+				if (numLevels > buffer.remaining()) {
+					throw new IOException("Corrupt replay");
+				}
+				droneCounts = new int[numLevels];
+				for (int i = 0; i < numLevels; i++) {
+					droneCounts[i] = getVarint(buffer);
+				}
+			}
+			// Older replays were all recorded with cars responding on every tick that they touched.
+			boolean isRespondingOncePerContact = (version > NO_CONTACTS_VERSION) && buffer.get() != 0;
+			return new Replay(seed, isTwoPlayer, tickLength, ticks, finalHash, keys, keyTicks, touchTicks,
+					droneCounts, isRespondingOncePerContact);
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Truncated replay");
+		}
+	}
+
+	/**
+	 * Writes this replay to a file through a memory-mapped buffer.
+	 * 
+	 * @param file the file.
+	 * @throws IOException if the file can't be written.
+	 */
+	public void write(File file) throws IOException {
+		int size = encodedSize();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			encode(buffer);
+			buffer.force();
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a replay from a file through a memory-mapped buffer.
+	 * 
+	 * @param file the file.
+	 * @return the replay.
+	 * @throws IOException if the file can't be read or doesn't hold a valid replay.
+	 */
+	public static Replay read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return decode(buffer);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static int ticksSize(int[] ticks) {
+		int size = varintSize(ticks.length);
+		int last = 0;
+		for (int i = 0; i < ticks.length; i++) {
+			size += varintSize(ticks[i] - last);
+			last = ticks[i];
+		}
+		return size;
+	}
+
+	private static void putTicks(ByteBuffer buffer, int[] ticks) {
+		putVarint(buffer, ticks.length);
+		int last = 0;
+		for (int i = 0; i < ticks.length; i++) {
+			putVarint(buffer, ticks[i] - last);
+			last = ticks[i];
+		}
+	}
+
+	private static int[] getTicks(ByteBuffer buffer) throws IOException {
+		int count = getVarint(buffer);
+		if (count > buffer.remaining()) {
+			throw new IOException("Corrupt replay");
+		}
+		int[] ticks = new int[count];
+		int last = 0;
+		for (int i = 0; i < count; i++) {
+			last += getVarint(buffer);
+			ticks[i] = last;
+		}
+		return ticks;
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt replay");
+	}
+
+	/**
+	 * Plays back a replay file headlessly, as fast as possible, and checks that it ends in the recorded state.
+	 */
+	public static void main(String[] args) throws IOException {
+		File file = new File(args[0]);
+		long startTime = System.nanoTime();
+		Replay replay = Replay.read(file);
+		Simulator simulator = replay.simulator();
+		simulator.step(replay.ticks());
+		double millis = (System.nanoTime() - startTime) / 1e6;
+		World world = simulator.world();
+		boolean isVerified = world.stateHash() == replay.finalHash();
+		System.out.printf("%s: %d bytes, %d ticks (%.0fs of racing) replayed in %.1fms, reached level %d, %s%n",
+				file, file.length(), replay.ticks(), replay.ticks() * replay.tickLength(), millis, world.level() + 1,
+				isVerified ? "verified" : "DESYNC");
+	}
+}
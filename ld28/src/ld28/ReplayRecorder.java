@@ -0,0 +1,101 @@
+package ld28;
+
+import ldtk.Time;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Records the input that a World sees so that the race can be replayed. It wraps another input source, samples it
+ * once per tick, and remembers only the ticks on which a key changed state or the screen was touched. The World sees
+ * the sampled input, so what it sees and what is recorded are always the same.
+ */
+public class ReplayRecorder implements InputSource {
+
+	private final InputSource input;
+	private final Time time;
+	private final long seed;
+	private final boolean isTwoPlayer;
+	private final int[] keys;
+	private final IntArray[] keyTicks;
+	private final IntArray touchTicks;
+	private final boolean[] isPressed;
+	private boolean justTouched;
+	private float tickLength;
+	private int tick;
+
+	/**
+	 * Creates a recorder.
+	 * 
+	 * @param input the input being recorded.
+	 * @param time the World's time source, from which the tick length is recorded.
+	 * @param seed the seed of the World's random number generator.
+	 * @param isTwoPlayer true if this is a two player game.
+	 * @param keys the keys to record.
+	 */
+	public ReplayRecorder(InputSource input, Time time, long seed, boolean isTwoPlayer, int[] keys) {
+		this.input = input;
+		this.time = time;
+		this.seed = seed;
+		this.isTwoPlayer = isTwoPlayer;
+		this.keys = keys;
+		this.keyTicks = new IntArray[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keyTicks[i] = new IntArray();
+		}
+		this.touchTicks = new IntArray();
+		this.isPressed = new boolean[keys.length];
+		this.tick = -1;
+	}
+
+	@Override
+	public void poll() {
+		input.poll();
+		tick++;
+		if (tick == 0) {
+			tickLength = time.delta;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			boolean isKeyPressed = input.isKeyPressed(keys[i]);
+			if (isKeyPressed != isPressed[i]) {
+				isPressed[i] = isKeyPressed;
+				keyTicks[i].add(tick);
+			}
+		}
+		justTouched = input.justTouched();
+		if (justTouched) {
+			touchTicks.add(tick);
+		}
+	}
+
+	@Override
+	public boolean isKeyPressed(int key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key) {
+				return isPressed[i];
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean justTouched() {
+		return justTouched;
+	}
+
+	/**
+	 * Returns a replay of everything recorded so far.
+	 * 
+	 * @param finalHash the World's state hash at the end of the recording, so that playback can be verified.
+	 * @param droneCounts the number of computer cars that the World spawned on each level.
+	 * @param isRespondingOncePerContact true if the World's cars only responded to collisions when they first touched.
+	 * @return the replay.
+	 */
+	public Replay replay(long finalHash, int[] droneCounts, boolean isRespondingOncePerContact) {
+		int[][] ticks = new int[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			ticks[i] = keyTicks[i].toArray();
+		}
+		return new Replay(seed, isTwoPlayer, tickLength, tick + 1, finalHash, keys.clone(), ticks,
+				touchTicks.toArray(), droneCounts, isRespondingOncePerContact);
+	}
+}
@@ -0,0 +1,85 @@
+package ld28;
+
+/**
+ * A small, seedable pseudo-random number generator (xorshift64*). Unlike libGDX's MathUtils.random it isn't shared,
+ * so each World can have its own.
+ */
+public class Rng {
+
+	private long state;
+
+	public Rng(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Reseeds the generator.
+	 * 
+	 * @param seed the seed.
+	 */
+	public void setSeed(long seed) {
+		// Zero is the one state that xorshift can't escape from.
+		state = (seed == 0) ? 0x9e3779b97f4a7c15L : seed;
+	}
+
+	/**
+	 * Returns the generator's internal state, so that it can be put back later with {@link #setState(long)}.
+	 * 
+	 * @return the state.
+	 */
+	public long state() {
+		return state;
+	}
+
+	/**
+	 * Puts back a state that was returned by {@link #state()}. Unlike {@link #setSeed(long)} this doesn't touch the
+	 * value, so the generator carries on exactly where it was.
+	 * 
+	 * @param state the state.
+	 */
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	/**
+	 * Returns the next pseudo-random 64-bit value.
+	 * 
+	 * @return the value.
+	 */
+	public long nextLong() {
+		state ^= state >>> 12;
+		state ^= state << 25;
+		state ^= state >>> 27;
+		return state * 0x2545f4914f6cdd1dL;
+	}
+
+	/**
+	 * Returns a random number between start (inclusive) and end (inclusive).
+	 * 
+	 * @param start the lowest value that can be returned.
+	 * @param end the highest value that can be returned.
+	 * @return the random number.
+	 */
+	public int random(int start, int end) {
+		long range = (long) end - start + 1;
+		return start + (int) ((nextLong() >>> 1) % range);
+	}
+
+	/**
+	 * Returns a random boolean.
+	 * 
+	 * @return true or false with equal probability.
+	 */
+	public boolean randomBoolean() {
+		return nextLong() < 0;
+	}
+
+	/**
+	 * Returns a random number between 0 (inclusive) and 1 (exclusive).
+	 * 
+	 * @return the random number.
+	 */
+	public float random() {
+		return (nextLong() >>> 40) / (float) (1 << 24);
+	}
+}
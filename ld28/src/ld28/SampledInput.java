@@ -0,0 +1,67 @@
+package ld28;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Input that is sampled on one thread and read on another. The game thread samples the real input once per kernel
+ * tick and the simulation thread reads the latest sample once per World tick. Touches are counted rather than
+ * latched, so that a touch is seen by exactly one World tick however the two threads' ticks line up.
+ */
+class SampledInput implements InputSource {
+
+	private final InputSource input;
+	private final int[] keys;
+	private volatile int sampledKeys;
+	private final AtomicInteger touches = new AtomicInteger();
+	private int pressedKeys;
+	private boolean justTouched;
+
+	/**
+	 * Creates a sampled input.
+	 * 
+	 * @param input the real input.
+	 * @param keys the keys to sample. There can be at most 32 of them.
+	 */
+	public SampledInput(InputSource input, int[] keys) {
+		this.input = input;
+		this.keys = keys;
+	}
+
+	/**
+	 * Samples the real input. Call this from the thread that owns it.
+	 */
+	public void sample() {
+		input.poll();
+		int pressed = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (input.isKeyPressed(keys[i])) {
+				pressed |= 1 << i;
+			}
+		}
+		sampledKeys = pressed;
+		if (input.justTouched()) {
+			touches.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void poll() {
+		pressedKeys = sampledKeys;
+		justTouched = touches.getAndSet(0) > 0;
+	}
+
+	@Override
+	public boolean isKeyPressed(int key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key) {
+				return (pressedKeys & (1 << i)) != 0;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean justTouched() {
+		return justTouched;
+	}
+}
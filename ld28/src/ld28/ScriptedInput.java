@@ -0,0 +1,90 @@
+package ld28;
+
+/**
+ * Input that follows a script. For each key the script is a list of ticks, in ascending order, on which that key
+ * changes state, starting from released. Touches are a list of the ticks on which the screen is touched.
+ */
+public class ScriptedInput implements InputSource {
+
+	private static final int[] NO_TICKS = new int[0];
+
+	private final int[] keys;
+	private final int[][] keyTicks;
+	private final int[] touchTicks;
+	private final int[] keyCursors;
+	private final boolean[] isPressed;
+	private int touchCursor;
+	private boolean justTouched;
+	private int tick;
+
+	/**
+	 * Creates scripted input.
+	 * 
+	 * @param keys the keys that the script presses.
+	 * @param keyTicks for each key, the ticks on which it changes state.
+	 * @param touchTicks the ticks on which the screen is touched, or null if it never is.
+	 */
+	public ScriptedInput(int[] keys, int[][] keyTicks, int[] touchTicks) {
+		this.keys = keys;
+		this.keyTicks = keyTicks;
+		this.touchTicks = (touchTicks != null) ? touchTicks : NO_TICKS;
+		this.keyCursors = new int[keys.length];
+		this.isPressed = new boolean[keys.length];
+		this.tick = -1;
+	}
+
+	/**
+	 * Returns the tick that the script has reached.
+	 * 
+	 * @return the current tick, or -1 if the script hasn't started.
+	 */
+	public int tick() {
+		return tick;
+	}
+
+	/**
+	 * Returns true if there is nothing left in the script.
+	 * 
+	 * @return true if the script is finished.
+	 */
+	public boolean isFinished() {
+		for (int i = 0; i < keys.length; i++) {
+			if (keyCursors[i] < keyTicks[i].length) {
+				return false;
+			}
+		}
+		return touchCursor >= touchTicks.length;
+	}
+
+	@Override
+	public void poll() {
+		tick++;
+		for (int i = 0; i < keys.length; i++) {
+			int[] ticks = keyTicks[i];
+			while (keyCursors[i] < ticks.length && ticks[keyCursors[i]] <= tick) {
+				isPressed[i] = !isPressed[i];
+				keyCursors[i]++;
+			}
+		}
+		justTouched = false;
+		while (touchCursor < touchTicks.length && touchTicks[touchCursor] <= tick) {
+			justTouched = true;
+			touchCursor++;
+		}
+	}
+
+	@Override
+	public boolean isKeyPressed(int key) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == key) {
+				return isPressed[i];
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean justTouched() {
+		return justTouched;
+	}
+}
@@ -0,0 +1,130 @@
+package ld28;
+
+import ldtk.Time;
+
+/**
+ * Runs a World without a window, a GPU, sound or the kernel. The simulation is stepped at a fixed tick rate using
+ * its own time source, random number generator and event broker, so any number of simulators can exist at once.
+ */
+public class Simulator {
+
+	/**
+	 * The default number of ticks per second, matching the game's fixed timestep.
+	 */
+	public static final float TICKS_PER_SECOND = 60.0f;
+
+	private final Context context;
+	private final World world;
+	private float tickLength;
+	private long ticks;
+
+	/**
+	 * Creates a silent simulator with the given input and random seed.
+	 * 
+	 * @param input where the players' input comes from.
+	 * @param seed the seed for the simulation's random number generator.
+	 */
+	public Simulator(InputSource input, long seed) {
+		this(new Context(new Time(), input, SoundSink.SILENT, new Rng(seed), new Broker()), TICKS_PER_SECOND);
+	}
+
+	/**
+	 * Creates a simulator from the given context.
+	 * 
+	 * @param context the simulation's context. Its time source is advanced by the simulator.
+	 * @param ticksPerSecond the number of ticks per simulated second.
+	 */
+	public Simulator(Context context, float ticksPerSecond) {
+		this.context = context;
+		this.world = new World(context);
+		this.tickLength = 1.0f / ticksPerSecond;
+	}
+
+	public Context context() {
+		return context;
+	}
+
+	public World world() {
+		return world;
+	}
+
+	/**
+	 * Sets the length of a tick. Replays must be played back with the tick length that they were recorded with.
+	 * 
+	 * @param tickLength the length of a tick in seconds.
+	 */
+	public void setTickLength(float tickLength) {
+		this.tickLength = tickLength;
+	}
+
+	/**
+	 * Returns the number of ticks that the simulator has run since it was created.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public long ticks() {
+		return ticks;
+	}
+
+	/**
+	 * Starts a new game from the first level.
+	 * 
+	 * @param isTwoPlayer true for a two player game.
+	 */
+	public void start(boolean isTwoPlayer) {
+		world.init(isTwoPlayer);
+	}
+
+	/**
+	 * Starts a new game from the given level.
+	 * 
+	 * @param isTwoPlayer true for a two player game.
+	 * @param firstLevel the level to start on.
+	 */
+	public void start(boolean isTwoPlayer, int firstLevel) {
+		world.init(isTwoPlayer, firstLevel);
+	}
+
+	/**
+	 * Advances the simulation by one tick.
+	 */
+	public void step() {
+		Time time = context.time;
+		time.delta = tickLength;
+		time.time += tickLength;
+		world.update();
+		ticks++;
+	}
+
+	/**
+	 * Advances the simulation by the given number of ticks.
+	 * 
+	 * @param count the number of ticks.
+	 */
+	public void step(int count) {
+		for (int i = 0; i < count; i++) {
+			step();
+		}
+	}
+
+	/**
+	 * Steps a headless game as fast as possible and reports the tick rate. Takes an optional number of ticks and an
+	 * optional random seed. Games are restarted whenever they finish.
+	 */
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+		Simulator simulator = new Simulator(InputSource.NONE, seed);
+		simulator.start(false);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			simulator.step();
+			World world = simulator.world();
+			if (world.canQuit()) {
+				simulator.start(false);
+			}
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.out.printf("%d ticks in %.3fs (%.0f ticks/s)%n", count, seconds, count / seconds);
+	}
+}
@@ -0,0 +1,194 @@
+package ld28;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * A fixed-size ring buffer holding the last few seconds of a level as quantized car snapshots, one per tick, so that
+ * they can be shown as an instant replay without re-simulating anything. Each car takes six bytes per tick: its piece
+ * index, its slot and direction, its distance along the piece in 8.8 fixed point, and the change in its speed since
+ * the previous tick in sixteenths. Recording never allocates.
+ */
+class SnapshotRing {
+	private static final int RECORD_SIZE = 6;
+	private static final float DISTANCE_SCALE = 256.0f;
+	private static final float SPEED_SCALE = 16.0f;
+	private static final int MAX_DISTANCE = 0xffff;
+	private static final int ABSENT = 0xff;
+	private static final int DIRECTION_BIT = 0x08;
+	private static final int SLOT_MASK = 0x07;
+
+	private final int capacity;
+	private byte[] data;
+	private int maxCars;
+	private int numCars;
+	private int[] kinds;
+	private int[] lastSpeeds;
+	private int[] baseSpeeds;
+	private int[] playSpeeds;
+	private int head;
+	private int size;
+	private int playFrame;
+	private final Vector2 position = new Vector2();
+
+	/**
+	 * Creates a ring buffer.
+	 * 
+	 * @param capacity the number of ticks that the buffer holds.
+	 * @param maxCars the number of cars to make room for. The buffer grows at the start of a level if it has to.
+	 */
+	public SnapshotRing(int capacity, int maxCars) {
+		this.capacity = capacity;
+		allocate(maxCars);
+	}
+
+	private void allocate(int maxCars) {
+		this.maxCars = maxCars;
+		data = new byte[capacity * maxCars * RECORD_SIZE];
+		kinds = new int[maxCars];
+		lastSpeeds = new int[maxCars];
+		baseSpeeds = new int[maxCars];
+		playSpeeds = new int[maxCars];
+	}
+
+	/**
+	 * Empties the buffer ready to record a new level.
+	 * 
+	 * @param cars all of the cars on the level, in the order that they will be recorded.
+	 */
+	public void reset(List<Car> cars) {
+		numCars = cars.size();
+		if (numCars > maxCars) {
+			allocate(numCars);
+		}
+		for (int i = 0; i < numCars; i++) {
+			Car car = cars.get(i);
+			kinds[i] = CarFrame.kindOf(car);
+			lastSpeeds[i] = quantizeSpeed(car.speed());
+			baseSpeeds[i] = lastSpeeds[i];
+		}
+		head = 0;
+		size = 0;
+		playFrame = 0;
+	}
+
+	/**
+	 * Records a tick. If the buffer is full then the oldest tick is forgotten.
+	 * 
+	 * @param cars all of the cars on the level, in the same order as they were given to reset().
+	 */
+	public void record(List<Car> cars) {
+		int frameSize = maxCars * RECORD_SIZE;
+		if (size == capacity) {
+			// Forget the oldest tick, folding its speed changes into the base speeds.
+			int offset = head * frameSize;
+			for (int i = 0; i < numCars; i++, offset += RECORD_SIZE) {
+				baseSpeeds[i] += getShort(offset + 4);
+			}
+		}
+		else {
+			size++;
+		}
+
+		int offset = head * frameSize;
+		for (int i = 0; i < numCars; i++, offset += RECORD_SIZE) {
+			Car car = cars.get(i);
+			if (car.isCrashedOut()) {
+				data[offset] = (byte) ABSENT;
+				putShort(offset + 4, 0);
+				continue;
+			}
+			int distance = Math.min(MAX_DISTANCE, (int) (car.distance() * DISTANCE_SCALE));
+			int speed = quantizeSpeed(car.speed());
+			int slot = (car.currentSlot() + (int) Car.MAX_SLOT) & SLOT_MASK;
+			int direction = (car.direction() > 0) ? DIRECTION_BIT : 0;
+			data[offset] = (byte) car.pieceIndex();
+			data[offset + 1] = (byte) (slot | direction);
+			putShort(offset + 2, distance);
+			putShort(offset + 4, speed - lastSpeeds[i]);
+			lastSpeeds[i] = speed;
+		}
+		head = (head + 1) % capacity;
+	}
+
+	/**
+	 * Returns the number of ticks in the buffer.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Goes back to the oldest tick in the buffer, ready to play it back.
+	 */
+	public void rewind() {
+		playFrame = 0;
+		System.arraycopy(baseSpeeds, 0, playSpeeds, 0, numCars);
+	}
+
+	/**
+	 * Returns true if there are more ticks to play back.
+	 * 
+	 * @return true if there are more ticks.
+	 */
+	public boolean hasNext() {
+		return playFrame < size;
+	}
+
+	/**
+	 * Plays back the next tick, decoding it into a frame that can be drawn.
+	 * 
+	 * @param track the track that the tick was recorded on.
+	 * @param frame where to put the decoded cars.
+	 */
+	public void next(TrackBuilder track, CarFrame frame) {
+		int frameIndex = (head - size + playFrame + capacity) % capacity;
+		int offset = frameIndex * maxCars * RECORD_SIZE;
+		List<TrackPiece> pieces = track.pieces();
+		frame.ensureCapacity(numCars);
+		frame.clear();
+		for (int i = 0; i < numCars; i++, offset += RECORD_SIZE) {
+			playSpeeds[i] += getShort(offset + 4);
+			int pieceIndex = data[offset] & 0xff;
+			if (pieceIndex == ABSENT) {
+				continue;
+			}
+			int slotAndDirection = data[offset + 1];
+			float lane = Car.LANE_WIDTH * ((slotAndDirection & SLOT_MASK) - (int) Car.MAX_SLOT);
+			float direction = ((slotAndDirection & DIRECTION_BIT) != 0) ? 1.0f : -1.0f;
+			float distance = (getShort(offset + 2) & 0xffff) / DISTANCE_SCALE;
+			TrackPiece piece = pieces.get(pieceIndex);
+			piece.positionAt(distance, lane, position);
+			float angle = piece.angleAt(distance, lane);
+			int adjoiningLayer = track.adjoiningLayer(pieceIndex, distance, lane, Car.HALF_WIDTH);
+			frame.add(kinds[i], position.x, position.y, angle, piece.layer(), adjoiningLayer, direction);
+		}
+		playFrame++;
+	}
+
+	/**
+	 * Returns a car's speed as of the tick that was last played back.
+	 * 
+	 * @param car the car's index, in recording order.
+	 * @return the car's speed.
+	 */
+	public float speed(int car) {
+		return playSpeeds[car] / SPEED_SCALE;
+	}
+
+	private static int quantizeSpeed(float speed) {
+		return Math.round(speed * SPEED_SCALE);
+	}
+
+	private void putShort(int offset, int value) {
+		data[offset] = (byte) value;
+		data[offset + 1] = (byte) (value >> 8);
+	}
+
+	private short getShort(int offset) {
+		return (short) ((data[offset] & 0xff) | (data[offset + 1] << 8));
+	}
+}
@@ -0,0 +1,23 @@
+package ld28;
+
+/**
+ * Somewhere for the simulation to send its sound effects.
+ */
+public interface SoundSink {
+
+	/**
+	 * A sound sink that discards everything.
+	 */
+	public static final SoundSink SILENT = new SoundSink() {
+		@Override
+		public void play(String name) {
+		}
+	};
+
+	/**
+	 * Plays a sound.
+	 * 
+	 * @param name the name of the sound, eg, "sounds/crash".
+	 */
+	public abstract void play(String name);
+}
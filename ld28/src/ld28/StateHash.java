@@ -0,0 +1,50 @@
+package ld28;
+
+/**
+ * Functions for building a cheap, allocation-free rolling hash of simulation state. Two simulations that hash the
+ * same values in the same order get the same hash, so comparing hashes tick by tick finds the exact tick on which
+ * they diverge.
+ */
+public class StateHash {
+
+	/**
+	 * The hash of nothing.
+	 */
+	public static final long SEED = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	/**
+	 * Mixes an int into a hash.
+	 * 
+	 * @param hash the hash so far.
+	 * @param value the value to mix in.
+	 * @return the new hash.
+	 */
+	public static long mix(long hash, int value) {
+		hash = (hash ^ (value & 0xffffffffL)) * PRIME;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * Mixes a long into a hash.
+	 * 
+	 * @param hash the hash so far.
+	 * @param value the value to mix in.
+	 * @return the new hash.
+	 */
+	public static long mix(long hash, long value) {
+		return mix(mix(hash, (int) value), (int) (value >>> 32));
+	}
+
+	/**
+	 * Mixes the exact bits of a float into a hash.
+	 * 
+	 * @param hash the hash so far.
+	 * @param value the value to mix in.
+	 * @return the new hash.
+	 */
+	public static long mix(long hash, float value) {
+		return mix(hash, Float.floatToRawIntBits(value));
+	}
+}
@@ -38,10 +38,11 @@ class StraightPiece extends TrackPiece {
 	}
 
 	@Override
-	public Vector2 positionAt(float length, float lane) {
-		Vector2 v = new Vector2(startPos);
-		v.x += length * Math.cos(angle) - lane * Math.cos(angle + Math.PI / 2);
-		v.y += length * Math.sin(angle) - lane * Math.sin(angle + Math.PI / 2);
+	public Vector2 positionAt(float length, float lane, Vector2 out) {
+		// StrictMath rather than Math so that positions are bit-for-bit identical on every platform.
+		Vector2 v = out.set(startPos);
+		v.x += length * StrictMath.cos(angle) - lane * StrictMath.cos(angle + Math.PI / 2);
+		v.y += length * StrictMath.sin(angle) - lane * StrictMath.sin(angle + Math.PI / 2);
 		return v;
 	}
 }
\ No newline at end of file
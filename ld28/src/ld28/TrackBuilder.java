@@ -92,6 +92,32 @@ class TrackBuilder {
 		return pieces;
 	}
 	
+	/**
+	 * Returns the layer that something on the track overlaps into. Near either end of a piece that is the layer of the
+	 * piece that it joins onto, otherwise it is the piece's own layer.
+	 * 
+	 * @param pieceIndex the index of the piece.
+	 * @param distance the distance along the piece.
+	 * @param lane the lane.
+	 * @param margin how close to the end of the piece counts as overlapping the next piece.
+	 * @return the layer.
+	 */
+	public int adjoiningLayer(int pieceIndex, float distance, float lane, float margin) {
+		TrackPiece piece = pieces.get(pieceIndex);
+		if (distance < margin) {
+			int n = pieceIndex - 1;
+			if (n < 0) {
+				n = pieces.size() - 1;
+			}
+			return pieces.get(n).layer();
+		}
+		else if (distance > piece.length(lane) - margin) {
+			int n = (pieceIndex + 1) % pieces.size();
+			return pieces.get(n).layer();
+		}
+		return piece.layer();
+	}
+
 	public int piecesOnLayer(int layer) {
 		return piecesByLayer[layer];
 	}
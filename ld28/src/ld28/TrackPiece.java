@@ -34,7 +34,11 @@ abstract class TrackPiece {
 	public abstract float angleAtEnd();
 	
 	public abstract float angleAt(float length, float lane);
-	public abstract Vector2 positionAt(float length, float lane);
+	public abstract Vector2 positionAt(float length, float lane, Vector2 out);
+
+	public Vector2 positionAt(float length, float lane) {
+		return positionAt(length, lane, new Vector2());
+	}
 
 	
 	public Vector2 positionAtStart(float lane) {
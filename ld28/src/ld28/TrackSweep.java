@@ -0,0 +1,357 @@
+package ld28;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * The broad phase for car collisions. Cars never leave the track, so rather than testing every pair of cars the sweep
+ * keeps them sorted by how far they are along the track's centre line and only pairs up cars that are close enough
+ * along it to touch. The order barely changes from one tick to the next, so an insertion sort keeps it up to date in
+ * close to linear time.
+ * <p>
+ * The window is worked out from the track rather than guessed: two cars whose bounding circles overlap can't be
+ * further apart along the centre line than the window, even on the inside lane of the tightest turn. So the sweep finds
+ * every pair that the old all-pairs test would have found, and {@link #first(int)} and {@link #second(int)} hand them
+ * back in the same order that the all-pairs loop visited them, which keeps the race deterministic.
+ * <p>
+ * The sweep can also find collisions without looking at the cars' shapes at all, by {@link #findLanePairs(List)}.
+ * Cars never leave their lanes, so two cars touch if they're in the same lane and less than a car's length apart
+ * along it. That's a sort within each lane and a check of each car's neighbours, with the gap measured the short way
+ * round the lap so that cars either side of the start line are seen to touch.
+ * <p>
+ * Both ways of finding collisions also catch cars that passed right through each other during the tick, which a
+ * long enough tick lets a fast car do. Cars move forwards along their lanes at a steady speed within a tick, so the
+ * gap between two cars in the same lane changes steadily from where they were before the tick to where they are now.
+ * If it went from one car being more than a car's length behind the other to being more than a car's length in front,
+ * they touched part way through the tick. The window is stretched by the furthest any car moved, so that pairs like
+ * that are still found.
+ */
+class TrackSweep {
+	private static final int NUM_SLOTS = 2 * (int) Car.MAX_SLOT + 1;
+	private static final float CAR_LENGTH = 2 * Car.HALF_WIDTH;
+
+	private TrackBuilder track;
+	private float[] pieceStarts = new float[64];
+	private float[][] laneStarts = new float[NUM_SLOTS][64];
+	private float maxRatio;
+	private float window;
+	private int count;
+	private boolean isByLane;
+	private int[] order = new int[64];
+	private float[] keys = new float[64];
+	private int[] lanes = new int[64];
+	private int[] slots = new int[64];
+	private float[] laneKeys = new float[64];
+	private float[] prevLaneKeys = new float[64];
+	private long[] sortKeys = new long[64];
+	private long[] pairs = new long[64];
+	private int numPairs;
+
+	/**
+	 * Gets ready for a new track.
+	 *
+	 * @param track the track.
+	 */
+	public void reset(TrackBuilder track) {
+		this.track = track;
+		List<TrackPiece> pieces = track.pieces();
+		int numPieces = pieces.size();
+		if (pieceStarts.length < numPieces) {
+			pieceStarts = new float[numPieces];
+		}
+		float outerLane = Car.MAX_SLOT * Car.LANE_WIDTH;
+		float start = 0;
+		maxRatio = 1;
+		for (int i = 0; i < numPieces; i++) {
+			TrackPiece piece = pieces.get(i);
+			pieceStarts[i] = start;
+			float length = piece.length(0);
+			start += length;
+			float innerLength = Math.min(piece.length(-outerLane), piece.length(outerLane));
+			maxRatio = Math.max(maxRatio, length / innerLength);
+		}
+		for (int slot = 0; slot < NUM_SLOTS; slot++) {
+			if (laneStarts[slot].length < numPieces + 1) {
+				laneStarts[slot] = new float[numPieces + 1];
+			}
+			float lane = (slot - Car.MAX_SLOT) * Car.LANE_WIDTH;
+			float[] starts = laneStarts[slot];
+			starts[0] = 0;
+			for (int i = 0; i < numPieces; i++) {
+				starts[i + 1] = starts[i] + pieces.get(i).length(lane);
+			}
+		}
+		// Cars whose centres are D apart on the inside of a turn are at most an arc of D * PI / 2 apart there, which is
+		// stretched by the ratio of the centre line's radius to the inside lane's.
+		window = 2 * Car.BOUNDING_RADIUS * MathUtils.PI / 2 * maxRatio;
+		count = 0;
+	}
+
+	/**
+	 * Returns how far apart two cars can be along the track's centre line and still touch.
+	 *
+	 * @return the window.
+	 */
+	public float window() {
+		return window;
+	}
+
+	/**
+	 * Finds the pairs of cars that might be touching, or might have touched during the tick. This doesn't allocate
+	 * unless there are more cars or pairs than ever before.
+	 *
+	 * @param cars the cars that are racing.
+	 * @return the number of pairs.
+	 */
+	public int findPairs(List<Car> cars) {
+		int n = cars.size();
+		ensureCapacity(n);
+		List<TrackPiece> pieces = track.pieces();
+		for (int i = 0; i < n; i++) {
+			Car car = cars.get(i);
+			int pieceIndex = car.pieceIndex();
+			TrackPiece piece = pieces.get(pieceIndex);
+			keys[i] = pieceStarts[pieceIndex] + car.distance() / piece.length(car.lane()) * piece.length(0);
+			lanes[i] = 0;
+		}
+		sort(n, false);
+		// A step along a lane is at most maxRatio times as long along the centre line.
+		float sweptWindow = window + findLaneKeys(cars) * maxRatio;
+
+		numPairs = 0;
+		for (int a = 0; a < n; a++) {
+			int i = order[a];
+			float limit = keys[i] + sweptWindow;
+			int pieceIndex = cars.get(i).pieceIndex();
+			for (int b = a + 1; b < n && keys[order[b]] <= limit; b++) {
+				int j = order[b];
+				// Cars more than a piece apart are never counted as touching, even where the track crosses itself.
+				if (Math.abs(pieceIndex - cars.get(j).pieceIndex()) <= 1) {
+					addPair(Math.min(i, j), Math.max(i, j), false);
+				}
+			}
+		}
+		Arrays.sort(pairs, 0, numPairs);
+		return numPairs;
+	}
+
+	/**
+	 * Tests if the cars in a pair found by {@link #findPairs(List)} passed through each other during the tick, without
+	 * touching before or after it.
+	 *
+	 * @param pair the pair.
+	 * @return 1 if the first car was ahead when they touched, -1 if the second car was, or 0 if they didn't pass
+	 *         through each other.
+	 */
+	public int sweptHit(int pair) {
+		return crossing(first(pair), second(pair));
+	}
+
+	/**
+	 * Finds the pairs of cars that are touching, or touched during the tick, going only by their lanes and how far
+	 * they are along them. Unlike {@link #findPairs(List)} every pair found touched, and {@link #isFirstAhead(int)}
+	 * says which car ran into which. The pairs are in the same order as the ones that findPairs() returns.
+	 *
+	 * @param cars the cars that are racing.
+	 * @return the number of pairs.
+	 */
+	public int findLanePairs(List<Car> cars) {
+		int n = cars.size();
+		ensureCapacity(n);
+		float maxStep = findLaneKeys(cars);
+		System.arraycopy(laneKeys, 0, keys, 0, n);
+		System.arraycopy(slots, 0, lanes, 0, n);
+		sort(n, true);
+
+		numPairs = 0;
+		int numPieces = track.pieces().size();
+		for (int start = 0, end; start < n; start = end) {
+			int slot = lanes[order[start]];
+			for (end = start + 1; end < n && lanes[order[end]] == slot; end++) {
+			}
+			float lapLength = laneStarts[slot][numPieces];
+			for (int a = start; a < end; a++) {
+				int i = order[a];
+				float touchLimit = keys[i] + CAR_LENGTH;
+				float limit = touchLimit + maxStep;
+				// Look along the lane, carrying on past the end of the lap and round to the cars just after the start.
+				for (int b = a + 1; b < a + (end - start); b++) {
+					int j;
+					float key;
+					if (b < end) {
+						j = order[b];
+						key = keys[j];
+					}
+					else {
+						j = order[b - (end - start)];
+						key = keys[j] + lapLength;
+					}
+					if (key > limit) {
+						break;
+					}
+					int first = Math.min(i, j);
+					int second = Math.max(i, j);
+					if (key <= touchLimit) {
+						addPair(first, second, gap(first, second, lapLength) <= 0);
+					}
+					else {
+						int hit = crossing(first, second);
+						if (hit != 0) {
+							addPair(first, second, hit == 1);
+						}
+					}
+				}
+			}
+		}
+		Arrays.sort(pairs, 0, numPairs);
+		return numPairs;
+	}
+
+	/**
+	 * Returns true if the first car in a pair found by {@link #findLanePairs(List)} is ahead of the second, or level
+	 * with it.
+	 *
+	 * @param pair the pair.
+	 * @return true if the first car is ahead.
+	 */
+	public boolean isFirstAhead(int pair) {
+		return (pairs[pair] & 1) != 0;
+	}
+
+	/**
+	 * Returns the index of the first car in a pair, which is always less than the second's.
+	 *
+	 * @param pair the pair, from 0 to the number of pairs found.
+	 * @return the first car's index in the list of racing cars.
+	 */
+	public int first(int pair) {
+		return (int) (pairs[pair] >>> 32);
+	}
+
+	/**
+	 * Returns the index of the second car in a pair.
+	 *
+	 * @param pair the pair, from 0 to the number of pairs found.
+	 * @return the second car's index in the list of racing cars.
+	 */
+	public int second(int pair) {
+		return (int) pairs[pair] >>> 1;
+	}
+
+	// The lowest bit of a pair says whether the first car is ahead, which leaves the pairs sorting the same way.
+	private void addPair(int i, int j, boolean isFirstAhead) {
+		if (numPairs == pairs.length) {
+			pairs = Arrays.copyOf(pairs, numPairs * 2);
+		}
+		pairs[numPairs++] = ((long) i << 32) | (j << 1) | (isFirstAhead ? 1 : 0);
+	}
+
+	// Works out where every car is along its lane, now and before the tick, and returns the furthest that any of them
+	// moved. The lane's lap length is added back on for a car that crossed the start line.
+	private float findLaneKeys(List<Car> cars) {
+		int numPieces = track.pieces().size();
+		float maxStep = 0;
+		for (int i = 0, n = cars.size(); i < n; i++) {
+			Car car = cars.get(i);
+			int slot = car.currentSlot() + (int) Car.MAX_SLOT;
+			float[] starts = laneStarts[slot];
+			slots[i] = slot;
+			laneKeys[i] = starts[car.pieceIndex()] + car.distance();
+			prevLaneKeys[i] = starts[car.prevPieceIndex()] + car.prevDistance();
+			float step = laneKeys[i] - prevLaneKeys[i];
+			if (step < 0) {
+				step += starts[numPieces];
+			}
+			maxStep = Math.max(maxStep, step);
+		}
+		return maxStep;
+	}
+
+	// The gap from one car forward to another along their lane, measured the short way round the lap.
+	private float gap(int i, int j, float lapLength) {
+		return wrap(laneKeys[j] - laneKeys[i], lapLength);
+	}
+
+	// Two cars in the same lane passed through each other if the second went from more than a car's length behind the
+	// first to more than a car's length in front of it, or the other way round.
+	private int crossing(int i, int j) {
+		int slot = slots[i];
+		if (slots[j] != slot) {
+			return 0;
+		}
+		float lapLength = laneStarts[slot][track.pieces().size()];
+		float before = wrap(prevLaneKeys[j] - prevLaneKeys[i], lapLength);
+		float after = gap(i, j, lapLength);
+		if (before < -CAR_LENGTH && after > CAR_LENGTH) {
+			return 1;
+		}
+		if (before > CAR_LENGTH && after < -CAR_LENGTH) {
+			return -1;
+		}
+		return 0;
+	}
+
+	private static float wrap(float gap, float lapLength) {
+		if (gap > lapLength / 2) {
+			return gap - lapLength;
+		}
+		if (gap < -lapLength / 2) {
+			return gap + lapLength;
+		}
+		return gap;
+	}
+
+	private void ensureCapacity(int n) {
+		if (n > keys.length) {
+			int capacity = Math.max(n, keys.length * 2);
+			keys = new float[capacity];
+			lanes = new int[capacity];
+			slots = new int[capacity];
+			laneKeys = new float[capacity];
+			prevLaneKeys = new float[capacity];
+			order = new int[capacity];
+			sortKeys = new long[capacity];
+		}
+	}
+
+	// Cars are sorted by lane and then by key. Switching between sorting by lane and not, or cars joining or leaving
+	// the race, leaves the old order no use, so sort from scratch. Otherwise the order is nearly right already.
+	private void sort(int n, boolean isByLane) {
+		if (n != count || isByLane != this.isByLane) {
+			sortFully(n);
+			count = n;
+			this.isByLane = isByLane;
+		}
+		else {
+			insertionSort(n);
+		}
+	}
+
+	// The keys are never negative, so their bits sort in the same order as they do. The lane goes above them and the
+	// car's index below.
+	private void sortFully(int n) {
+		for (int i = 0; i < n; i++) {
+			sortKeys[i] = ((long) lanes[i] << 60) | ((long) Float.floatToIntBits(keys[i]) << 29) | i;
+		}
+		Arrays.sort(sortKeys, 0, n);
+		for (int i = 0; i < n; i++) {
+			order[i] = (int) (sortKeys[i] & ((1 << 29) - 1));
+		}
+	}
+
+	private void insertionSort(int n) {
+		for (int a = 1; a < n; a++) {
+			int i = order[a];
+			int lane = lanes[i];
+			float key = keys[i];
+			int b = a - 1;
+			while (b >= 0 && (lanes[order[b]] > lane || (lanes[order[b]] == lane && keys[order[b]] > key))) {
+				order[b + 1] = order[b];
+				b--;
+			}
+			order[b + 1] = i;
+		}
+	}
+}
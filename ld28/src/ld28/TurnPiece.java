@@ -86,8 +86,8 @@ class TurnPiece extends TrackPiece {
 	}
 
 	@Override
-	public Vector2 positionAt(float length, float lane) {
-		Vector2 v = new Vector2(centre);
+	public Vector2 positionAt(float length, float lane, Vector2 out) {
+		Vector2 v = out.set(centre);
 		float angle = angleAt(length, lane);
 		if (!isClockwise) {
 			angle -= MathUtils.PI / 2;
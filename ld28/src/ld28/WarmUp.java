@@ -0,0 +1,35 @@
+package ld28;
+
+/**
+ * Races a throwaway headless World over every level so that the simulation's hot paths, such as Car.update(),
+ * TurnPiece.positionAt() and the collision tests, have been compiled by the time the first real race starts. Each
+ * tick is also captured for drawing, as the render thread does, so the interpolation code is warmed up too. The
+ * kernel runs this on its own thread while the default assets are loading.
+ */
+class WarmUp implements Runnable {
+	private static final int TICKS_PER_LEVEL = 600;
+	private static final long SEED = 28;
+
+	@Override
+	public void run() {
+		int[] keys = { World.PLAYER_ONE_KEY, World.PLAYER_TWO_KEY };
+		RenderState state = new RenderState();
+		CarFrame frame = new CarFrame(64);
+		for (int level = 0; level < World.numLevels(); level++) {
+			InputSource input = new RandomInput(SEED + level, keys, 1.0f, Simulator.TICKS_PER_SECOND);
+			Simulator simulator = new Simulator(input, SEED + level);
+			simulator.start(true, level);
+			for (int i = 0; i < TICKS_PER_LEVEL; i++) {
+				simulator.step();
+				World world = simulator.world();
+				if (world.canQuit()) {
+					simulator.start(true, level);
+				}
+				else if (world.track() != null) {
+					state.capture(world);
+					state.cars(0.5f, frame);
+				}
+			}
+		}
+	}
+}
@@ -1,20 +1,33 @@
 package ld28;
 
 import java.util.ArrayList;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.List;
-
-import ldtk.Kernel;
-import ldtk.Sound;
+import java.util.concurrent.Executor;
 
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Pool;
 
 
 public class World {
 	
 	enum GameState { START_LEVEL, PLAY_LEVEL, END_LEVEL, WON_GAME, LOST_GAME };
 
+	/**
+	 * How the World decides which cars are touching.
+	 */
+	enum CollisionMode {
+		/**
+		 * Cars touch if their boxes overlap, as long as they're no more than a piece apart. This is how the game races.
+		 */
+		SHAPES,
+		/**
+		 * Cars touch if they're in the same lane and less than a car's length apart along it, measured in track space.
+		 */
+		LANES
+	};
+
 	static class PlayerWinEvent implements Event {
 		public final int winner;
 		
@@ -25,6 +38,18 @@ public class World {
 
 	static class PlayerLoseEvent implements Event {
 	}
+
+	/**
+	 * Published at the end of every tick with a hash of the World's state. The same instance is reused every tick,
+	 * so subscribers must copy anything that they want to keep.
+	 */
+	static class TickEvent implements Event {
+		public long tick;
+		public long hash;
+	}
+
+	static final int PLAYER_ONE_KEY = Keys.A;
+	static final int PLAYER_TWO_KEY = Keys.L;
 	
 	private static final float SMALL_STRAIGHT_SIZE = 120;
 	private static final float SMALL_CURVE_RADIUS = 120;
@@ -32,6 +57,10 @@ public class World {
 	private static final float LARGE_CURVE_RADIUS = 192;
 	private static final float END_LEVEL_TIMEOUT = 2.0f;
 	private static final float GAME_OVER_TIMEOUT = 2.0f;
+	private static final String OVERTAKING_SOUND = "sounds/overtake";
+	private static final String START_SOUND = "sounds/startrace";
+	private static final int INSTANT_REPLAY_TICKS = 300;
+	private static final int INSTANT_REPLAY_CARS = 128;
 	
 	private static String[] levels = {
 		"sssssLLsLLsssssLLsLL",							// 1
@@ -50,12 +79,11 @@ public class World {
 		"The Magic Garden",
 	};
 	private static int[] laps = { 5, 5, 5, 8, 5, 5 };
+	private final Context context;
 	private TrackBuilder track;
-	private List<Car> cars;
+	private final List<Car> cars = new ArrayList<Car>();
 	private PlayerCar player1;
 	private PlayerCar player2;
-	private Sound overtakingSound;
-	private Sound startSound;
 	private float startingTime;
 	private long player1Score;
 	private long player2Score;
@@ -64,18 +92,71 @@ public class World {
 	private GameState gameState;
 	private float stateTime;
 	private TrackBuilder trackBuilder = new TrackBuilder();
+	private final LevelPrefetch prefetch = new LevelPrefetch();
+	private Executor prefetchExecutor;
+	private final NarrowPhase narrowPhase = new NarrowPhase();
+	private volatile float droneDensity = 1.0f;
+	private int[] fixedDroneCounts;
+	private CollisionMode collisionMode = CollisionMode.SHAPES;
+	private boolean isRespondingOncePerContact = true;
+	private final ContactCache contacts = new ContactCache();
+	private final int[] droneCounts = new int[levels.length];
+	private final TickEvent tickEvent = new TickEvent();
+	private final LapTimeline currentLap = new LapTimeline(4096);
+	private final List<Car> spawned = new ArrayList<Car>();
+	private final CarTable table = new CarTable(64);
+	private final TrackSweep sweep = new TrackSweep();
+	private final Pool<Car> carPool = new Pool<Car>() {
+		@Override
+		protected Car newObject() {
+			return new Car(table, context);
+		}
+	};
+	private final Pool<PlayerCar> playerCarPool = new Pool<PlayerCar>() {
+		@Override
+		protected PlayerCar newObject() {
+			return new PlayerCar(table, context);
+		}
+	};
+	private final Pool<GhostCar> ghostCarPool = new Pool<GhostCar>() {
+		@Override
+		protected GhostCar newObject() {
+			return new GhostCar(table, context);
+		}
+	};
+	private final SnapshotRing instantReplay = new SnapshotRing(INSTANT_REPLAY_TICKS, INSTANT_REPLAY_CARS);
+	private Ghosts ghosts;
+	private GhostCar ghost;
+	private int currentLapNumber;
+	private long tick;
+	private long stateHash;
+
+	public World(Context context) {
+		this.context = context;
+	}
 
 	public void init(boolean isTwoPlayer) {
+		init(isTwoPlayer, 0);
+	}
+
+	/**
+	 * Starts a new game from the given level.
+	 * 
+	 * @param isTwoPlayer true for a two player game.
+	 * @param firstLevel the level to start on.
+	 */
+	public void init(boolean isTwoPlayer, int firstLevel) {
 		this.isTwoPlayer = isTwoPlayer;
-		overtakingSound = Kernel.sounds.get("sounds/overtake");
-		startSound = Kernel.sounds.get("sounds/startrace");
-		level = -1;
+		level = firstLevel - 1;
+		tick = 0;
+		stateHash = StateHash.SEED;
+		Arrays.fill(droneCounts, 0);
 		changeState(GameState.START_LEVEL);
 	}
 
 	private void changeState(GameState newState) {
 		gameState = newState;
-		stateTime = Kernel.time.time;
+		stateTime = context.time.time;
 	}
 	
 	public int level() {
@@ -89,12 +170,172 @@ public class World {
 	public List<Car> cars() {
 		return cars;
 	}
+
+	/**
+	 * Returns the ghost that is racing on this level.
+	 * 
+	 * @return the ghost, or null if there isn't one.
+	 */
+	public GhostCar ghost() {
+		return ghost;
+	}
+
+	/**
+	 * Returns the car that a handle refers to.
+	 * 
+	 * @param handle a handle from {@link Car#handle()}.
+	 * @return the car, or null if the handle is from an earlier level.
+	 */
+	public Car car(int handle) {
+		return table.car(handle);
+	}
+
+	/**
+	 * Returns the last few seconds of the level, for showing as an instant replay.
+	 * 
+	 * @return the instant replay.
+	 */
+	public SnapshotRing instantReplay() {
+		return instantReplay;
+	}
+
+	/**
+	 * Tells the World where to record player one's laps and where to find ghosts to race against.
+	 * 
+	 * @param ghosts the ghosts, or null for no ghosts.
+	 */
+	public void setGhosts(Ghosts ghosts) {
+		this.ghosts = ghosts;
+	}
 	
+	/**
+	 * Tells the World where to prepare the next level while the current one is ending. Without an executor the next
+	 * level is prepared when it starts.
+	 * 
+	 * @param prefetchExecutor the executor, or null.
+	 */
+	public void setPrefetchExecutor(Executor prefetchExecutor) {
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	/**
+	 * Lets the World test which cars are touching on several threads at once, for levels with a great many cars. The
+	 * race comes out exactly the same as it does on one thread. Without an executor every pair of cars is tested on
+	 * the thread that updates the World.
+	 * 
+	 * @param collisionExecutor the executor, or null.
+	 * @param numThreads the number of threads to share the tests between, counting the thread that updates the World.
+	 */
+	public void setCollisionExecutor(Executor collisionExecutor, int numThreads) {
+		narrowPhase.setExecutor(collisionExecutor, numThreads);
+	}
+
+	/**
+	 * Sets the fraction of each level's computer cars that are spawned, so that slow devices can race fewer of them.
+	 * It takes effect from the next level. The number used on each level is recorded by droneCounts().
+	 * 
+	 * @param droneDensity the fraction, from 0 to 1.
+	 */
+	public void setDroneDensity(float droneDensity) {
+		this.droneDensity = droneDensity;
+	}
+
+	/**
+	 * Fixes the number of computer cars spawned on each level, overriding the density. Replays use this so that they
+	 * play back with the cars that they were recorded with.
+	 * 
+	 * @param fixedDroneCounts the number of computer cars for each level, or null to use the density. Levels past the
+	 *        end of the array get all of their cars.
+	 */
+	public void setDroneCounts(int[] fixedDroneCounts) {
+		this.fixedDroneCounts = fixedDroneCounts;
+	}
+
+	/**
+	 * Returns the number of computer cars that were spawned on each level so far.
+	 * 
+	 * @return the counts, one per level up to and including the current one.
+	 */
+	public int[] droneCounts() {
+		return Arrays.copyOf(droneCounts, level + 1);
+	}
+
+	/**
+	 * Chooses how the World decides which cars are touching. The modes race differently, so replays and saved games
+	 * only play back in the mode that they were made in, which for the game is always {@link CollisionMode#SHAPES}.
+	 * 
+	 * @param collisionMode the mode.
+	 */
+	public void setCollisionMode(CollisionMode collisionMode) {
+		this.collisionMode = collisionMode;
+	}
+
+	public CollisionMode collisionMode() {
+		return collisionMode;
+	}
+
+	/**
+	 * Chooses whether cars only respond to a collision when they first touch, or on every tick that they're touching
+	 * as they used to. Replays made before contacts were tracked respond on every tick.
+	 * 
+	 * @param isRespondingOncePerContact true to respond only when cars first touch.
+	 */
+	public void setRespondingOncePerContact(boolean isRespondingOncePerContact) {
+		this.isRespondingOncePerContact = isRespondingOncePerContact;
+	}
+
+	public boolean isRespondingOncePerContact() {
+		return isRespondingOncePerContact;
+	}
+
+	private int numDrones(int numCars) {
+		if (fixedDroneCounts != null) {
+			return (level < fixedDroneCounts.length) ? Math.min(numCars, fixedDroneCounts[level]) : numCars;
+		}
+		return Math.min(numCars, (int) Math.ceil(numCars * droneDensity));
+	}
+
+	/**
+	 * Returns the next level's track if it has already been prepared, so that it can be got ready for drawing.
+	 * 
+	 * @return the next level's track, or null if it isn't ready.
+	 */
+	public TrackBuilder nextTrack() {
+		return prefetch.readyTrack(level + 1);
+	}
+
 	public String levelName() {
 		return levelNames[level];
 	}
 
-	private TrackBuilder generateTrack(String trackDef) {
+	static String levelDef(int level) {
+		return levels[level];
+	}
+
+	static int numCars(String trackDef) {
+		String trackLenStr = trackDef.replace("+", "");
+		trackLenStr = trackLenStr.replace("+", "");
+		return (int)(trackLenStr.length() * 0.8f);
+	}
+
+	/**
+	 * Returns the number of pieces in a track, without building it.
+	 * 
+	 * @param trackDef the track's definition.
+	 * @return the number of pieces.
+	 */
+	static int numPieces(String trackDef) {
+		int numPieces = 0;
+		for (int i = 0, n = trackDef.length(); i < n; i++) {
+			char c = trackDef.charAt(i);
+			if (c != '+' && c != '-') {
+				numPieces++;
+			}
+		}
+		return numPieces;
+	}
+
+	static void generateTrack(String trackDef, TrackBuilder trackBuilder) {
 		trackBuilder.init(0, 0, 0);
 		for (int i = 0, n = trackDef.length(); i < n; i++) {
 			char c = trackDef.charAt(i);
@@ -128,26 +369,27 @@ public class World {
 			}
 		}
 		trackBuilder.build();
-		return trackBuilder;
 	}
 
 	public void update() {
+		context.input.poll();
 		switch (gameState) {
 		case START_LEVEL:
 			startNewLevel();
 			break;
 		case PLAY_LEVEL:
 			updateCars();
+			recordLap();
 			updateCollisions();
 			checkForOvertaking();
 			checkForWinCondition();
 			checkForLoseCondition();
 			updateScores();
+			instantReplay.record(spawned);
 			break;
 		case END_LEVEL:
 			updateCars();
-			if (Kernel.time.time >= stateTime + END_LEVEL_TIMEOUT) {
-				tearDownLevel();
+			if (context.time.time >= stateTime + END_LEVEL_TIMEOUT) {
 				changeState(GameState.START_LEVEL);
 			}
 			break;
@@ -158,10 +400,193 @@ public class World {
 			updateCars();
 			break;
 		}
+		tick++;
+		stateHash = hashState(stateHash);
+		tickEvent.tick = tick;
+		tickEvent.hash = stateHash;
+		context.broker.publish(tickEvent);
+	}
+
+	/**
+	 * Returns the number of ticks since the World was initialised.
+	 * 
+	 * @return the number of ticks.
+	 */
+	public long tick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the rolling hash of the World's state as of the end of the last tick. It depends on the state at every
+	 * tick so far, not just the current one.
+	 * 
+	 * @return the hash.
+	 */
+	public long stateHash() {
+		return stateHash;
+	}
+
+	private long hashState(long hash) {
+		hash = StateHash.mix(hash, tick);
+		hash = StateHash.mix(hash, level);
+		hash = StateHash.mix(hash, gameState.ordinal());
+		hash = StateHash.mix(hash, player1Score);
+		hash = StateHash.mix(hash, player2Score);
+		if (track != null) {
+			hash = StateHash.mix(hash, cars.size());
+			for (int i = 0, n = cars.size(); i < n; i++) {
+				hash = cars.get(i).hash(hash);
+			}
+			if (isRespondingOncePerContact) {
+				hash = hashContacts(hash);
+			}
+		}
+		return hash;
+	}
+
+	// The contacts are sorted by handle, and handles depend on how the World got to this level as well as on the race,
+	// so the contacts are hashed by row in an order-independent way.
+	private long hashContacts(long hash) {
+		int n = contacts.size();
+		long sum = 0;
+		for (int i = 0; i < n; i++) {
+			long pair = ((long) table.row(contacts.front(i)) << 32) | table.row(contacts.rear(i));
+			sum += StateHash.mix(StateHash.SEED, pair);
+		}
+		hash = StateHash.mix(hash, n);
+		return StateHash.mix(hash, sum);
+	}
+
+	/**
+	 * Saves the World's state into a snapshot so that it can be put back later with {@link #restore(WorldSnapshot)}.
+	 * This doesn't allocate unless the snapshot has to grow to hold more cars than it has seen before.
+	 * 
+	 * @param snapshot the snapshot to save into.
+	 */
+	public void save(WorldSnapshot snapshot) {
+		snapshot.level = level;
+		snapshot.gameState = gameState.ordinal();
+		snapshot.stateTime = stateTime;
+		snapshot.startingTime = startingTime;
+		snapshot.player1Score = player1Score;
+		snapshot.player2Score = player2Score;
+		snapshot.isTwoPlayer = isTwoPlayer;
+		snapshot.tick = tick;
+		snapshot.stateHash = stateHash;
+		snapshot.rngState = context.rng.state();
+		snapshot.time = context.time.time;
+		snapshot.delta = context.time.delta;
+		snapshot.currentLapNumber = currentLapNumber;
+		snapshot.currentLap.set(currentLap);
+		snapshot.ghostTick = (ghost != null) ? ghost.tick() : -1;
+
+		int count = spawned.size();
+		snapshot.ensureCapacity(count);
+		snapshot.count = count;
+		for (int i = 0; i < count; i++) {
+			Car car = spawned.get(i);
+			snapshot.kind[i] = CarFrame.kindOf(car);
+			snapshot.isRacing[i] = car.isRacing();
+			car.save(snapshot, i);
+		}
+
+		// Cars are added to the table in spawn order, so a car's row is its index in the snapshot.
+		int numContacts = contacts.size();
+		snapshot.ensureContactCapacity(numContacts);
+		snapshot.numContacts = numContacts;
+		for (int i = 0; i < numContacts; i++) {
+			snapshot.contactFront[i] = table.row(contacts.front(i));
+			snapshot.contactRear[i] = table.row(contacts.rear(i));
+		}
+	}
+
+	/**
+	 * Puts the World back into the state that was saved in a snapshot. Restoring a snapshot from the level that the
+	 * World is already on doesn't allocate. Restoring one from another level rebuilds the track and respawns the
+	 * cars first. The instant replay and the ghosts' best laps are left alone, as they aren't part of the race.
+	 * 
+	 * @param snapshot the snapshot to restore.
+	 */
+	public void restore(WorldSnapshot snapshot) {
+		if (snapshot.level != level || snapshot.count != spawned.size() || snapshot.isTwoPlayer != isTwoPlayer) {
+			respawn(snapshot);
+		}
+		level = snapshot.level;
+		gameState = GameState.values()[snapshot.gameState];
+		stateTime = snapshot.stateTime;
+		startingTime = snapshot.startingTime;
+		player1Score = snapshot.player1Score;
+		player2Score = snapshot.player2Score;
+		tick = snapshot.tick;
+		stateHash = snapshot.stateHash;
+		context.rng.setState(snapshot.rngState);
+		context.time.time = snapshot.time;
+		context.time.delta = snapshot.delta;
+		currentLapNumber = snapshot.currentLapNumber;
+		currentLap.set(snapshot.currentLap);
+		if (ghost != null && snapshot.ghostTick >= 0) {
+			ghost.setTick(snapshot.ghostTick % ghost.lapLength());
+		}
+
+		cars.clear();
+		for (int i = 0; i < snapshot.count; i++) {
+			Car car = spawned.get(i);
+			car.restore(snapshot, i);
+			if (snapshot.isRacing[i]) {
+				addToRace(car);
+			}
+		}
+		contacts.clear();
+		for (int i = 0; i < snapshot.numContacts; i++) {
+			contacts.add(table.handle(snapshot.contactFront[i]), table.handle(snapshot.contactRear[i]));
+		}
+		contacts.endTick();
+	}
+
+	private void respawn(WorldSnapshot snapshot) {
+		isTwoPlayer = snapshot.isTwoPlayer;
+		freeCars();
+		if (snapshot.level < 0) {
+			track = null;
+			return;
+		}
+
+		// Where the cars are spawned doesn't matter as restoring overwrites it.
+		generateTrack(levels[snapshot.level], trackBuilder);
+		track = trackBuilder;
+		table.reset(track, snapshot.count + 1);
+		sweep.reset(track);
+		contacts.clear();
+		for (int i = 0; i < snapshot.count; i++) {
+			Car car;
+			switch (snapshot.kind[i]) {
+			case CarFrame.PLAYER_ONE:
+				player1 = playerCarPool.obtain();
+				player1.spawn(1, PLAYER_ONE_KEY, 0, 0, 0);
+				car = player1;
+				break;
+			case CarFrame.PLAYER_TWO:
+				player2 = playerCarPool.obtain();
+				player2.spawn(2, PLAYER_TWO_KEY, 0, 0, 0);
+				car = player2;
+				break;
+			default:
+				car = carPool.obtain();
+				car.spawn(0, 0, 0);
+				break;
+			}
+			spawned.add(car);
+		}
+		spawnGhost(snapshot.level);
+		instantReplay.reset(spawned);
+	}
+
+	public boolean isTwoPlayer() {
+		return isTwoPlayer;
 	}
 
 	public boolean isStarting() {
-		return Kernel.time.time < startingTime;
+		return context.time.time < startingTime;
 	}
 	
 	private void startNewLevel() {
@@ -171,82 +596,195 @@ public class World {
 		}
 
 		level++;
-		String trackDef = levels[level];
-		track = generateTrack(trackDef);
-		cars = new ArrayList<Car>();
-		String trackLenStr = trackDef.replace("+", "");
-		trackLenStr = trackLenStr.replace("+", "");
-		int numCars = (int)(trackLenStr.length() * 0.8f);
-		
-		// Spawn the computer cars, avoiding piece 0 so that the players don't get screwed.
-		// Computer cars aren't allowed to spawn on each other.
-		BitSet[] occupied = new BitSet[5];
-		for (int i = 0; i < occupied.length; i++) {
-			occupied[i] = new BitSet();
-		}
-		final int margin = 1;
-		for (int i = 0; i < numCars; i++) {
-			int attempts = 20;
-			int pieceIndex;
-			int lane;
-			do {
-				pieceIndex = MathUtils.random(margin + 1, track.pieces().size() - 1);
-				lane = MathUtils.random(-2, 2);
-			} while (occupied[lane + 2].get(pieceIndex) && attempts-- > 0);
-			cars.add(new Car(track, pieceIndex, lane, MathUtils.random(300, 400)));
+		prefetch.take(level, context.rng.state());
+		trackBuilder = prefetch.swapTrack(trackBuilder);
+		track = trackBuilder;
+		freeCars();
+		// Thinning the cars out just drops the last few, so the random number generator carries on as it would have.
+		int numDrones = numDrones(prefetch.numCars());
+		droneCounts[level] = numDrones;
+		// Room for the drones, both players and the ghost.
+		table.reset(track, numDrones + 3);
+		sweep.reset(track);
+		contacts.clear();
+		for (int i = 0; i < numDrones; i++) {
+			Car car = carPool.obtain();
+			car.spawn(prefetch.pieceIndex(i), prefetch.slot(i), prefetch.speed(i));
+			spawned.add(car);
 		}
+		context.rng.setState(prefetch.rngStateAfter());
 		
-		int mult = MathUtils.randomBoolean() ? 1 : -1;
-		player1 = new PlayerCar(1, Keys.A, track, 0, -1 * mult, 500);
-		cars.add(player1);
+		int mult = prefetch.playerSide();
+		player1 = playerCarPool.obtain();
+		player1.spawn(1, PLAYER_ONE_KEY, 0, -1 * mult, 500);
+		spawned.add(player1);
 		if (isTwoPlayer) {
-			player2 = new PlayerCar(2, Keys.L, track, 0,  1 * mult, 500);
-			cars.add(player2);
+			player2 = playerCarPool.obtain();
+			player2.spawn(2, PLAYER_TWO_KEY, 0,  1 * mult, 500);
+			spawned.add(player2);
+		}
+		for (int i = 0, n = spawned.size(); i < n; i++) {
+			addToRace(spawned.get(i));
 		}
-		startingTime = Kernel.time.time + 2.0f;
-		startSound.play();
+		spawnGhost(level);
+		currentLap.clear();
+		currentLapNumber = player1.lap();
+		instantReplay.reset(spawned);
+
+		startingTime = context.time.time + 2.0f;
+		context.sounds.play(START_SOUND);
 		changeState(GameState.PLAY_LEVEL);
 	}
 
-	private void tearDownLevel() {
-		App.broker.unsubscribeAll(PlayerWinEvent.class);
-		App.broker.unsubscribeAll(PlayerLoseEvent.class);
+	private void spawnGhost(int level) {
+		if (ghosts != null) {
+			LapTimeline bestLap = ghosts.bestLap(level);
+			if (bestLap != null) {
+				ghost = ghostCarPool.obtain();
+				ghost.spawn(bestLap);
+			}
+		}
 	}
-	
+
+	/**
+	 * Returns the last level's cars to their pools, so that the next level can reuse them rather than allocating.
+	 */
+	private void freeCars() {
+		for (int i = 0, n = spawned.size(); i < n; i++) {
+			Car car = spawned.get(i);
+			if (car instanceof PlayerCar) {
+				playerCarPool.free((PlayerCar) car);
+			}
+			else {
+				carPool.free(car);
+			}
+		}
+		if (ghost != null) {
+			ghostCarPool.free(ghost);
+		}
+		spawned.clear();
+		cars.clear();
+		player1 = null;
+		player2 = null;
+		ghost = null;
+	}
+
+	private void addToRace(Car car) {
+		car.racingIndex = cars.size();
+		cars.add(car);
+	}
+
+	/**
+	 * Takes a car out of the race in constant time by moving the last racing car into its place. Only players ever
+	 * leave the race, and they are always the last cars, so this keeps the rest in spawn order just as removing the car
+	 * from the middle of the list would.
+	 * 
+	 * @param car the car to remove.
+	 */
+	private void removeFromRace(Car car) {
+		int last = cars.size() - 1;
+		Car moved = cars.remove(last);
+		if (moved != car) {
+			cars.set(car.racingIndex, moved);
+			moved.racingIndex = car.racingIndex;
+		}
+		car.racingIndex = -1;
+		car.setRacing(false);
+	}
+
+	// Cars are always updated, collided and hashed in an order that depends only on the order that they were spawned
+	// in, so the same inputs and seed always produce the same race.
+	// The players steer before the table moves everyone, and count their laps afterwards. They're handled last to
+	// first, as they always have been, so that their sounds play in the same order.
 	private void updateCars() {
-		for (int i = cars.size() - 1; i >= 0; i--) {
-			Car car = cars.get(i);
-			car.update();
+		if (player2 != null && player2.isRacing()) {
+			player2.beforeUpdate();
+		}
+		if (player1.isRacing()) {
+			player1.beforeUpdate();
 		}
+		table.update(context.time.delta);
+		if (player2 != null && player2.isRacing()) {
+			player2.afterUpdate();
+		}
+		if (player1.isRacing()) {
+			player1.afterUpdate();
+		}
+		if (ghost != null) {
+			ghost.update();
+		}
+	}
+
+	private void recordLap() {
+		if (ghosts == null || player1.health() < 0) {
+			return;
+		}
+		if (player1.lap() != currentLapNumber) {
+			ghosts.offer(level, currentLap);
+			currentLap.clear();
+			currentLapNumber = player1.lap();
+		}
+		currentLap.add(player1.pieceIndex(), player1.lane(), player1.distance());
 	}
 
 	private void updateCollisions() {
-		for (int i = 0, n = cars.size(); i < n; i++) {
-			Car car = cars.get(i);
-			for (int j = i + 1; j < n; j++) {
-				Car other = cars.get(j);
-				switch (car.hit(other)) {
-				case 1:
-					other.onRanInto(car);
-					car.onWasRunInto(other);
-					break;
-				case -1:
-					car.onRanInto(other);
-					car.onWasRunInto(other);
-					break;
+		// The sweep hands back the pairs that might touch in the order that testing every pair would visit them.
+		boolean isByLane = collisionMode == CollisionMode.LANES;
+		int n = isByLane ? sweep.findLanePairs(cars) : sweep.findPairs(cars);
+		if (!isByLane) {
+			narrowPhase.test(sweep, cars, n);
+		}
+		contacts.beginTick();
+		for (int k = 0; k < n; k++) {
+			Car car = cars.get(sweep.first(k));
+			Car other = cars.get(sweep.second(k));
+			int wasHit = 0;
+			if (isRespondingOncePerContact) {
+				wasHit = contacts.find(car.handle(), other.handle());
+			}
+			int hit = isByLane ? (sweep.isFirstAhead(k) ? 1 : -1) : narrowPhase.result(k);
+			if (hit == NarrowPhase.TOUCHING) {
+				// Earlier responses this tick may have changed how far along their pieces the cars are.
+				hit = car.whoShunted(other);
+			}
+			if (hit == 0) {
+				continue;
+			}
+			if (isRespondingOncePerContact) {
+				if (hit == 1) {
+					contacts.add(car.handle(), other.handle());
+				}
+				else {
+					contacts.add(other.handle(), car.handle());
 				}
+				// Cars that were already touching have already responded.
+				if (wasHit != 0) {
+					continue;
+				}
+			}
+			switch (hit) {
+			case 1:
+				other.onRanInto(car);
+				car.onWasRunInto(other);
+				break;
+			case -1:
+				car.onRanInto(other);
+				car.onWasRunInto(other);
+				break;
 			}
 		}
+		contacts.endTick();
 	}
+
 	
 	private void checkForOvertaking() {
 		if (player2 == null) {
 			return;
 		}
 		
-		if (player1.pieceIndex == player2.pieceIndex) {
-			if (Math.abs(player1.distance - player2.distance) < 5.0f) {
-				overtakingSound.play();
+		if (player1.pieceIndex() == player2.pieceIndex()) {
+			if (Math.abs(player1.distance() - player2.distance()) < 5.0f) {
+				context.sounds.play(OVERTAKING_SOUND);
 			}
 		}
 	}
@@ -254,11 +792,15 @@ public class World {
 	private void checkForWinCondition() {
 		if (player1.lap() > laps[level]) {
 			changeState(GameState.END_LEVEL);
-			App.broker.publish(new PlayerWinEvent(1));
+			raceOver();
+			prefetchNextLevel();
+			context.broker.publish(new PlayerWinEvent(1));
 		}
 		else if (player2 != null && player2.lap() > laps[level]) {
 			changeState(GameState.END_LEVEL);
-			App.broker.publish(new PlayerWinEvent(2));
+			raceOver();
+			prefetchNextLevel();
+			context.broker.publish(new PlayerWinEvent(2));
 		}
 	}
 	
@@ -266,20 +808,38 @@ public class World {
 		boolean isGameOver = player1.health() < 0 && (player2 == null || player2.health() < 0);
 		if (isGameOver) {
 			changeState(GameState.LOST_GAME);
-			App.broker.publish(new PlayerLoseEvent());
+			raceOver();
+			context.broker.publish(new PlayerLoseEvent());
 		}
-		if (player1.health() < 0) {
-			cars.remove(player1);
+		if (player1.health() < 0 && player1.isRacing()) {
+			removeFromRace(player1);
 		}
-		if (player2 != null && player2.health() < 0) {
-			cars.remove(player2);
+		if (player2 != null && player2.health() < 0 && player2.isRacing()) {
+			removeFromRace(player2);
 		}
 	}
 	
+	// Nothing uses the random number generator between the end of one level and the start of the next, so the next
+	// level can be spawned now from a copy of its state.
+	private void prefetchNextLevel() {
+		if (level + 1 < levels.length) {
+			prefetch.request(level + 1, context.rng.state());
+			if (prefetchExecutor != null) {
+				prefetchExecutor.execute(prefetch);
+			}
+		}
+	}
+
+	private void raceOver() {
+		for (int i = 0, n = spawned.size(); i < n; i++) {
+			spawned.get(i).raceOver();
+		}
+	}
+
 	private void updateScores() {
-		player1Score += player1.speed * Kernel.time.delta;
+		player1Score += player1.speed() * context.time.delta;
 		if (isTwoPlayer) {
-			player2Score += player2.speed * Kernel.time.delta;
+			player2Score += player2.speed() * context.time.delta;
 		}
 	}
 	
@@ -303,6 +863,18 @@ public class World {
 		return laps[level];
 	}
 
+	public static int laps(int level) {
+		return laps[level];
+	}
+
+	public static int numLevels() {
+		return levels.length;
+	}
+
+	public static String levelName(int level) {
+		return levelNames[level];
+	}
+
 	public float player1Health() {
 		return player1.health();
 	}
@@ -311,6 +883,18 @@ public class World {
 		return player2.health();
 	}
 
+	public int player1Crashes() {
+		return player1.crashes();
+	}
+
+	public int player2Crashes() {
+		return player2.crashes();
+	}
+
+	public boolean isLevelComplete() {
+		return gameState == GameState.END_LEVEL;
+	}
+
 	public boolean isGameOver() {
 		return gameState == GameState.LOST_GAME;
 	}
@@ -321,6 +905,6 @@ public class World {
 	
 	public boolean canQuit() {
 		return (gameState == GameState.LOST_GAME || gameState == GameState.WON_GAME) &&
-				Kernel.time.time > stateTime + GAME_OVER_TIMEOUT;
+				context.time.time > stateTime + GAME_OVER_TIMEOUT;
 	}
 }
@@ -4,6 +4,7 @@ import java.util.List;
 
 import ldtk.Camera;
 import ldtk.Image;
+import ldtk.Job;
 import ldtk.Kernel;
 
 import com.badlogic.gdx.graphics.Color;
@@ -13,7 +14,6 @@ import com.badlogic.gdx.math.Vector2;
 
 public class WorldRenderer {
 
-	private World world;
 	private Camera gameCam;
 	private TrackRenderer trackRenderer;
 	private CarRenderer carRenderer;
@@ -23,92 +23,206 @@ public class WorldRenderer {
 		carRenderer = new CarRenderer();
 	}
 
-	public void init(World world, Camera camera) {
-		this.world = world;
+	public void init(Camera camera) {
 		this.gameCam = camera;
 		trackRenderer.init();
 		carRenderer.init();
 	}
 
-	public void onLevelStart() {
-		trackRenderer.changeTrack(world.track());
-		carRenderer.changeTrack(world.cars());
+	/**
+	 * Switches to drawing a new level's track.
+	 * 
+	 * @param level the level.
+	 * @param track the level's track.
+	 */
+	public void onLevelStart(int level, TrackBuilder track) {
+		trackRenderer.changeTrack(level, track);
+	}
+
+	/**
+	 * Starts getting the next level's track ready to draw, so that starting the level doesn't cause a hitch.
+	 * 
+	 * @param level the next level.
+	 * @param track the next level's track.
+	 */
+	public void prefetchLevel(int level, TrackBuilder track) {
+		trackRenderer.prefetchTrack(level, track);
 	}
 	
-	public void draw() {
+	public void draw(CarFrame frame) {
 		gameCam.activate();
 		for (int i = 0; i < TrackBuilder.NUM_LAYERS; i++) {
 			trackRenderer.draw(i);
-			carRenderer.draw(i);
+			carRenderer.draw(frame, i);
+		}
+		if (Quality.isObscuredPassOn()) {
+			carRenderer.drawObscured(frame);
 		}
-		carRenderer.drawObscured();
 	}
 }
 
 
 class TrackRenderer {
 
+	private TrackMesh current = new TrackMesh();
+	private TrackMesh next = new TrackMesh();
+	private Texture trackTexture;
+	private Texture startFinishTexture;
+
+	public void init() {
+		trackTexture = Kernel.images.get("textures/track").region().getTexture();
+		startFinishTexture = Kernel.images.get("textures/startfinish").region().getTexture();
+	}
+
+	/**
+	 * Switches to drawing a new track. If its vertices were prefetched then this is just a swap. Otherwise, as for the
+	 * first level of a game, a resumed race or the start of a replay, they are built straight away, because the track
+	 * has to be drawn from the next frame. Either way the track is tessellated for the quality level at the time it was
+	 * built.
+	 * 
+	 * @param level the level that the track is for.
+	 * @param track the track.
+	 */
+	public void changeTrack(int level, TrackBuilder track) {
+		if (next.isFor(level, track)) {
+			next.finish();
+			current.cancel();
+			TrackMesh temp = current;
+			current = next;
+			next = temp;
+		}
+		else {
+			current.build(level, track, Quality.quadsPerPiece());
+			current.finish();
+		}
+	}
+
+	/**
+	 * Starts building the vertices for the next level's track in the background, so that they're ready when the
+	 * level starts.
+	 * 
+	 * @param level the level that the track is for.
+	 * @param track the track.
+	 */
+	public void prefetchTrack(int level, TrackBuilder track) {
+		if (!next.isFor(level, track)) {
+			next.build(level, track, Quality.quadsPerPiece());
+		}
+	}
+
+	public void draw(int layer) {
+		current.draw(layer, trackTexture, startFinishTexture);
+	}
+}
+
+
+/**
+ * The vertices for drawing one track, which are built a few pieces at a time by a job.
+ */
+class TrackMesh {
+
 	private static final int VERTS_PER_QUAD = 20;
-	private static final int QUADS_PER_PIECE = 6;
 	private static final float TRACK_WIDTH = 88;
+	private static final int PIECES_PER_SLICE = 4;
 	private static final float WHITE_BITS = Color.WHITE.toFloatBits();
 
 	private final float[] startFinishVertices;
 	private final float[] vertices;
 	private final int[] layerStarts;
 	private final int[] layerIndexes;
-	private Texture trackTexture;
-	private Texture startFinishTexture;
+	private final Vector2 tl = new Vector2();
+	private final Vector2 bl = new Vector2();
+	private final Vector2 br = new Vector2();
+	private final Vector2 tr = new Vector2();
+	private TrackBuilder track;
+	private int level = -1;
+	private int quadsPerPiece;
+	private int nextPiece;
+	private final Job buildJob = new Job("track vertices") {
+		@Override
+		protected boolean run() {
+			return generateVerts(PIECES_PER_SLICE);
+		}
+	};
 
-	
-	public TrackRenderer() {
-		vertices = new float[TrackBuilder.MAX_TRACK_PIECES * QUADS_PER_PIECE * VERTS_PER_QUAD];
+	public TrackMesh() {
+		vertices = new float[TrackBuilder.MAX_TRACK_PIECES * Quality.MAX_QUADS_PER_PIECE * VERTS_PER_QUAD];
 		layerStarts = new int[TrackBuilder.NUM_LAYERS];
 		layerIndexes = new int[TrackBuilder.NUM_LAYERS];
 		startFinishVertices = new float[VERTS_PER_QUAD];
 	}
-	
-	public void init() {
-		trackTexture = Kernel.images.get("textures/track").region().getTexture();
-		startFinishTexture = Kernel.images.get("textures/startfinish").region().getTexture();
-	}
 
-	public void changeTrack(TrackBuilder track) {
-		generateVerts(track);
+	/**
+	 * Returns true if this mesh is for the given level's track, whether or not it has finished building.
+	 */
+	public boolean isFor(int level, TrackBuilder track) {
+		return this.level == level && this.track == track;
 	}
-	
-	private void generateVerts(TrackBuilder track) {
+
+	/**
+	 * Starts building the vertices for a track.
+	 * 
+	 * @param level the level that the track is for.
+	 * @param track the track.
+	 * @param quadsPerPiece the number of quads along each piece, which is at most Quality.MAX_QUADS_PER_PIECE.
+	 */
+	public void build(int level, TrackBuilder track, int quadsPerPiece) {
+		Kernel.jobs.cancel(buildJob);
+		this.level = level;
+		this.track = track;
+		this.quadsPerPiece = quadsPerPiece;
+		nextPiece = 0;
 		int start = 0;
 		for (int i = 0; i < TrackBuilder.NUM_LAYERS; i++) {
 			layerStarts[i] = start;
 			layerIndexes[i] = start;
-			start += track.piecesOnLayer(i) * QUADS_PER_PIECE * VERTS_PER_QUAD;
+			start += track.piecesOnLayer(i) * quadsPerPiece * VERTS_PER_QUAD;
 		}
-		
-		Vector2 tl = new Vector2();
-		Vector2 bl = new Vector2();
-		Vector2 br = new Vector2();
-		Vector2 tr = new Vector2();
+		Kernel.jobs.add(buildJob);
+	}
+
+	/**
+	 * Finishes building the vertices now.
+	 */
+	public void finish() {
+		Kernel.jobs.finish(buildJob);
+	}
+
+	/**
+	 * Stops building the vertices and forgets which track they were for.
+	 */
+	public void cancel() {
+		Kernel.jobs.cancel(buildJob);
+		level = -1;
+		track = null;
+	}
+
+	private boolean generateVerts(int maxPieces) {
+		List<TrackPiece> pieces = track.pieces();
+		int end = Math.min(pieces.size(), nextPiece + maxPieces);
+		for (; nextPiece < end; nextPiece++) {
+			generateVerts(pieces.get(nextPiece), nextPiece == 0);
+		}
+		return nextPiece == pieces.size();
+	}
+
+	private void generateVerts(TrackPiece piece, boolean isFirst) {
 		float leftBorder = -TRACK_WIDTH / 2;
 		float rightBorder = TRACK_WIDTH / 2;
-		boolean first = true;
-		for (TrackPiece piece : track.pieces()) {
-			float leftLength = piece.length(leftBorder);
-			float rightLength = piece.length(rightBorder);
-			float leftStep = leftLength / QUADS_PER_PIECE;
-			float rightStep = rightLength / QUADS_PER_PIECE;
-			for (int i = 0; i < QUADS_PER_PIECE; i++) {
-				tl.set(piece.positionAt(leftStep * i, leftBorder));
-				bl.set(piece.positionAt(rightStep * i, rightBorder));
-				tr.set(piece.positionAt(leftStep * (i + 1), leftBorder));
-				br.set(piece.positionAt(rightStep * (i + 1), rightBorder));
-				addQuad(piece.layer(), tl, bl, br, tr);
-				if (first) {
-					first = false;
-					Vector2 tr2 = new Vector2(piece.positionAt(leftStep / 2, leftBorder));
-					Vector2 br2 = new Vector2(piece.positionAt(rightStep / 2, rightBorder));
-					addStartFinish(tl, bl, br2, tr2);
-				}
+		float leftLength = piece.length(leftBorder);
+		float rightLength = piece.length(rightBorder);
+		float leftStep = leftLength / quadsPerPiece;
+		float rightStep = rightLength / quadsPerPiece;
+		for (int i = 0; i < quadsPerPiece; i++) {
+			piece.positionAt(leftStep * i, leftBorder, tl);
+			piece.positionAt(rightStep * i, rightBorder, bl);
+			piece.positionAt(leftStep * (i + 1), leftBorder, tr);
+			piece.positionAt(rightStep * (i + 1), rightBorder, br);
+			addQuad(piece.layer(), tl, bl, br, tr);
+			if (isFirst && i == 0) {
+				piece.positionAt(leftStep / 2, leftBorder, tr);
+				piece.positionAt(rightStep / 2, rightBorder, br);
+				addStartFinish(tl, bl, br, tr);
 			}
 		}
 	}
@@ -177,11 +291,14 @@ class TrackRenderer {
 		layerIndexes[layer] += VERTS_PER_QUAD;
 	}
 	
-	public void draw(int layer) {
+	public void draw(int layer, Texture trackTexture, Texture startFinishTexture) {
+		if (track == null) {
+			return;
+		}
 		int start = layerStarts[layer];
 		int count = layerIndexes[layer] - start;
 		Kernel.batch.draw(trackTexture, vertices, start, count);
-		if (layer == 0) {
+		if (layer == 0 && nextPiece > 0) {
 			Kernel.batch.draw(startFinishTexture, startFinishVertices, 0, startFinishVertices.length);
 		}
 	}
@@ -195,7 +312,6 @@ class CarRenderer {
 	private Image blueCarImage;
 	private Image redArrowImage;
 	private Image blueArrowImage;
-	private List<Car> cars;
 
 	public void init() {
 		carImage = Kernel.images.get("atlases/ld28/dronecar");
@@ -206,47 +322,53 @@ class CarRenderer {
 		blueArrowImage = Kernel.images.get("atlases/ld28/bluearrow");
 	}
 	
-	public void changeTrack(List<Car> cars) {
-		this.cars = cars;
-	}
-	
-	public void draw(int layer) {
-		for (int i = 0, n = cars.size(); i < n; i++) {
-			Car car = cars.get(i);
-			if (car.layer() == layer || car.adjoiningLayer() == layer) { 
-				if (car instanceof PlayerCar) {
-					PlayerCar playerCar = (PlayerCar) car;
-					float arrowX = playerCar.x();
-					float arrowY = playerCar.y();
-					float arrowAngle = (playerCar.direction() > 0)
-							? car.angle() - MathUtils.PI / 2
-							: car.angle() + MathUtils.PI / 2;
-					float arrowDist = 16 + 4 * MathUtils.sin(Kernel.time.time * 10);
+	public void draw(CarFrame frame, int layer) {
+		for (int i = 0, n = frame.count; i < n; i++) {
+			if (frame.layer[i] == layer || frame.adjoiningLayer[i] == layer) { 
+				float x = frame.x[i];
+				float y = frame.y[i];
+				float angle = frame.angle[i];
+				int kind = frame.kind[i];
+				if (kind == CarFrame.PLAYER_ONE || kind == CarFrame.PLAYER_TWO) {
+					float arrowX = x;
+					float arrowY = y;
+					float arrowAngle = (frame.direction[i] > 0)
+							? angle - MathUtils.PI / 2
+							: angle + MathUtils.PI / 2;
+					float arrowDist = Quality.isHudAnimated() ? 16 + 4 * bob() : 16;
 					arrowX += arrowDist * MathUtils.cos(arrowAngle);
 					arrowY += arrowDist * MathUtils.sin(arrowAngle);
 					arrowAngle *= MathUtils.radDeg;
 					
-					switch (playerCar.playerNumber()) {
-					case 1:
-						redCarImage.draw(car.x(), car.y(), MathUtils.radDeg * car.angle());
+					if (kind == CarFrame.PLAYER_ONE) {
+						redCarImage.draw(x, y, MathUtils.radDeg * angle);
 						redArrowImage.draw(arrowX, arrowY, arrowAngle);
-						break;
-					case 2:
-						blueCarImage.draw(car.x(), car.y(), MathUtils.radDeg * car.angle());
+					}
+					else {
+						blueCarImage.draw(x, y, MathUtils.radDeg * angle);
 						blueArrowImage.draw(arrowX, arrowY, arrowAngle);
 					}
 				}
+				else if (kind == CarFrame.GHOST) {
+					obscuredCarImage.draw(x, y, MathUtils.radDeg * angle);
+				}
 				else {
-					carImage.draw(car.x(), car.y(), MathUtils.radDeg * car.angle());
+					carImage.draw(x, y, MathUtils.radDeg * angle);
 				}
 			}
 		}
 	}
 	
-	public void drawObscured() {
-		for (int i = 0, n = cars.size(); i < n; i++) {
-			Car car = cars.get(i);
-			obscuredCarImage.draw(car.x(), car.y(), MathUtils.radDeg * car.angle());
+	private float bob() {
+		// Wrap the phase in double precision so that the bobbing stays smooth however long the game has been running.
+		return MathUtils.sin((float) ((Kernel.time.seconds * 10) % MathUtils.PI2));
+	}
+
+	public void drawObscured(CarFrame frame) {
+		for (int i = 0, n = frame.count; i < n; i++) {
+			if (frame.kind[i] != CarFrame.GHOST) {
+				obscuredCarImage.draw(frame.x[i], frame.y[i], MathUtils.radDeg * frame.angle[i]);
+			}
 		}
 	}
 }
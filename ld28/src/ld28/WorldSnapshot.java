@@ -0,0 +1,302 @@
+package ld28;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Everything that a World needs in order to carry on from a given tick, held in preallocated primitive arrays so
+ * that taking a snapshot and restoring one don't allocate once the arrays are big enough. A snapshot can be restored
+ * any number of times, which is what rollback and what-if searches need.
+ * <p>
+ * Per-car state is held in parallel arrays indexed by the order that the cars were spawned in. The player-only
+ * arrays are unused for computer cars. The pairs of cars that were touching are held by the same indices.
+ */
+public class WorldSnapshot {
+	private static final int MAGIC = 0x4c445356;	// "LDSV"
+	private static final int VERSION = 2;
+	private static final int NO_CONTACTS_VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 1 + 4 + 1 + 4 + 4 + 8 + 8 + 1 + 8 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+	private static final int CONTACT_SIZE = 4 + 4;
+	private static final int CAR_SIZE = 1 + 1 + 2 + 1 + 4 * 4 + 1 + 3 * 4 + 2 + 4 + 4;
+	private static final int LAP_TICK_SIZE = 2 + 4 + 4;
+	private static final int IS_RACING = 1;
+	private static final int IS_RACE_OVER = 2;
+	private static final int IS_KEY_PRESSED = 4;
+	private static final int DEFAULT_CARS = 64;
+	private static final int DEFAULT_LAP_TICKS = 4096;
+	private static final int DEFAULT_CONTACTS = 16;
+
+	// The World.
+	int level;
+	int gameState;
+	float stateTime;
+	float startingTime;
+	long player1Score;
+	long player2Score;
+	boolean isTwoPlayer;
+	long tick;
+	long stateHash;
+	long rngState;
+	float time;
+	float delta;
+	int currentLapNumber;
+	final LapTimeline currentLap;
+	int ghostTick;
+
+	// The cars.
+	int count;
+	int[] kind;
+	boolean[] isRacing;
+	int[] pieceIndex;
+	int[] currentSlot;
+	float[] lane;
+	float[] distance;
+	float[] speed;
+	float[] maxSpeed;
+	float[] direction;
+	boolean[] isRaceOver;
+	float[] prevX;
+	float[] prevY;
+	float[] prevAngle;
+
+	// The players.
+	boolean[] isKeyPressed;
+	int[] lap;
+	float[] health;
+	int[] crashes;
+
+	// The contacts.
+	int numContacts;
+	int[] contactFront = new int[DEFAULT_CONTACTS];
+	int[] contactRear = new int[DEFAULT_CONTACTS];
+
+	public WorldSnapshot() {
+		this(DEFAULT_CARS);
+	}
+
+	public WorldSnapshot(int capacity) {
+		currentLap = new LapTimeline(DEFAULT_LAP_TICKS);
+		allocate(capacity);
+	}
+
+	/**
+	 * Returns the tick that the snapshot was taken at.
+	 *
+	 * @return the tick.
+	 */
+	public long tick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the World's state hash at the time that the snapshot was taken.
+	 *
+	 * @return the hash.
+	 */
+	public long stateHash() {
+		return stateHash;
+	}
+
+	/**
+	 * Returns the number of bytes that {@link #encode(ByteBuffer)} will write.
+	 *
+	 * @return the size in bytes.
+	 */
+	public int encodedSize() {
+		return HEADER_SIZE + count * CAR_SIZE + currentLap.length() * LAP_TICK_SIZE + numContacts * CONTACT_SIZE;
+	}
+
+	/**
+	 * Encodes the snapshot into a buffer. Only the state that can't be recomputed is written. Things like the track
+	 * and the cars' positions are derived from it when the snapshot is restored.
+	 *
+	 * @param buffer the buffer, which must have at least {@link #encodedSize()} bytes remaining.
+	 */
+	public void encode(ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.put((byte) VERSION);
+		buffer.putInt(level);
+		buffer.put((byte) gameState);
+		buffer.putFloat(stateTime);
+		buffer.putFloat(startingTime);
+		buffer.putLong(player1Score);
+		buffer.putLong(player2Score);
+		buffer.put((byte) (isTwoPlayer ? 1 : 0));
+		buffer.putLong(tick);
+		buffer.putLong(stateHash);
+		buffer.putLong(rngState);
+		buffer.putFloat(time);
+		buffer.putFloat(delta);
+		buffer.putInt(currentLapNumber);
+		buffer.putInt(ghostTick);
+		buffer.putInt(count);
+		buffer.putInt(currentLap.length());
+		buffer.putInt(numContacts);
+		for (int i = 0; i < count; i++) {
+			int flags = (isRacing[i] ? IS_RACING : 0) | (isRaceOver[i] ? IS_RACE_OVER : 0) |
+					(isKeyPressed[i] ? IS_KEY_PRESSED : 0);
+			buffer.put((byte) kind[i]);
+			buffer.put((byte) flags);
+			buffer.putShort((short) pieceIndex[i]);
+			buffer.put((byte) currentSlot[i]);
+			buffer.putFloat(lane[i]);
+			buffer.putFloat(distance[i]);
+			buffer.putFloat(speed[i]);
+			buffer.putFloat(maxSpeed[i]);
+			buffer.put((byte) direction[i]);
+			buffer.putFloat(prevX[i]);
+			buffer.putFloat(prevY[i]);
+			buffer.putFloat(prevAngle[i]);
+			buffer.putShort((short) lap[i]);
+			buffer.putFloat(health[i]);
+			buffer.putInt(crashes[i]);
+		}
+		for (int i = 0, n = currentLap.length(); i < n; i++) {
+			buffer.putShort((short) currentLap.pieceIndex(i));
+			buffer.putFloat(currentLap.lane(i));
+			buffer.putFloat(currentLap.distance(i));
+		}
+		for (int i = 0; i < numContacts; i++) {
+			buffer.putInt(contactFront[i]);
+			buffer.putInt(contactRear[i]);
+		}
+	}
+
+	/**
+	 * Decodes a snapshot from a buffer into this one. This only allocates if the snapshot has to grow.
+	 *
+	 * @param buffer the buffer.
+	 * @throws IOException if the buffer doesn't hold a valid snapshot.
+	 */
+	public void decode(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a saved race");
+			}
+			int version = buffer.get();
+			if (version != VERSION && version != NO_CONTACTS_VERSION) {
+				throw new IOException("Unsupported saved race version: " + version);
+			}
+			level = buffer.getInt();
+			gameState = buffer.get();
+			stateTime = buffer.getFloat();
+			startingTime = buffer.getFloat();
+			player1Score = buffer.getLong();
+			player2Score = buffer.getLong();
+			isTwoPlayer = buffer.get() != 0;
+			tick = buffer.getLong();
+			stateHash = buffer.getLong();
+			rngState = buffer.getLong();
+			time = buffer.getFloat();
+			delta = buffer.getFloat();
+			currentLapNumber = buffer.getInt();
+			ghostTick = buffer.getInt();
+			int newCount = buffer.getInt();
+			int lapLength = buffer.getInt();
+			// Older saves didn't record contacts, so the race carries on as if no cars were touching.
+			int newNumContacts = (version == NO_CONTACTS_VERSION) ? 0 : buffer.getInt();
+			// Check the counts against what's left of the buffer before allocating anything for them, so that a corrupt
+			// count can't ask for more memory than there is.
+			int remaining = buffer.remaining();
+			if (level < -1 || level >= World.numLevels() || gameState < 0 ||
+					gameState >= World.GameState.values().length || newCount < 0 || newCount > remaining / CAR_SIZE ||
+					lapLength < 0 || lapLength > remaining / LAP_TICK_SIZE || newNumContacts < 0 ||
+					newNumContacts > remaining / CONTACT_SIZE || (level < 0 && newCount > 0)) {
+				throw new IOException("Corrupt saved race");
+			}
+			int numPieces = (level < 0) ? 0 : World.numPieces(World.levelDef(level));
+			ensureCapacity(newCount);
+			count = newCount;
+			for (int i = 0; i < count; i++) {
+				kind[i] = buffer.get();
+				int flags = buffer.get();
+				pieceIndex[i] = buffer.getShort();
+				currentSlot[i] = buffer.get();
+				lane[i] = buffer.getFloat();
+				distance[i] = buffer.getFloat();
+				speed[i] = buffer.getFloat();
+				maxSpeed[i] = buffer.getFloat();
+				direction[i] = buffer.get();
+				prevX[i] = buffer.getFloat();
+				prevY[i] = buffer.getFloat();
+				prevAngle[i] = buffer.getFloat();
+				lap[i] = buffer.getShort();
+				health[i] = buffer.getFloat();
+				crashes[i] = buffer.getInt();
+				if (pieceIndex[i] < 0 || pieceIndex[i] >= numPieces || Math.abs(currentSlot[i]) > Car.MAX_SLOT) {
+					throw new IOException("Corrupt saved race");
+				}
+				isRacing[i] = (flags & IS_RACING) != 0;
+				isRaceOver[i] = (flags & IS_RACE_OVER) != 0;
+				isKeyPressed[i] = (flags & IS_KEY_PRESSED) != 0;
+			}
+			currentLap.clear();
+			for (int i = 0; i < lapLength; i++) {
+				int lapPieceIndex = buffer.getShort();
+				if (level >= 0 && (lapPieceIndex < 0 || lapPieceIndex >= numPieces)) {
+					throw new IOException("Corrupt saved race");
+				}
+				currentLap.add(lapPieceIndex, buffer.getFloat(), buffer.getFloat());
+			}
+			ensureContactCapacity(newNumContacts);
+			numContacts = newNumContacts;
+			for (int i = 0; i < numContacts; i++) {
+				contactFront[i] = buffer.getInt();
+				contactRear[i] = buffer.getInt();
+				if (contactFront[i] < 0 || contactFront[i] >= count || contactRear[i] < 0 || contactRear[i] >= count) {
+					throw new IOException("Corrupt saved race");
+				}
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Truncated saved race");
+		}
+	}
+
+	/**
+	 * Makes sure that there is room for at least the given number of cars. The snapshot's existing contents are lost
+	 * if it has to grow, but it only ever has to grow when a World is saved into it.
+	 *
+	 * @param capacity the number of cars.
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity > kind.length) {
+			allocate(Math.max(capacity, kind.length * 2));
+		}
+	}
+
+	/**
+	 * Makes sure that there is room for at least the given number of contacts. The existing contacts are lost if it
+	 * has to grow.
+	 *
+	 * @param capacity the number of contacts.
+	 */
+	void ensureContactCapacity(int capacity) {
+		if (capacity > contactFront.length) {
+			int newCapacity = Math.max(capacity, contactFront.length * 2);
+			contactFront = new int[newCapacity];
+			contactRear = new int[newCapacity];
+		}
+	}
+
+	private void allocate(int capacity) {
+		kind = new int[capacity];
+		isRacing = new boolean[capacity];
+		pieceIndex = new int[capacity];
+		currentSlot = new int[capacity];
+		lane = new float[capacity];
+		distance = new float[capacity];
+		speed = new float[capacity];
+		maxSpeed = new float[capacity];
+		direction = new float[capacity];
+		isRaceOver = new boolean[capacity];
+		prevX = new float[capacity];
+		prevY = new float[capacity];
+		prevAngle = new float[capacity];
+		isKeyPressed = new boolean[capacity];
+		lap = new int[capacity];
+		health = new float[capacity];
+		crashes = new int[capacity];
+	}
+}
@@ -0,0 +1,64 @@
+package ld28;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Polygon;
+
+public class TestCarShape {
+	private static final int PAIRS = 200000;
+	private static final float SPREAD = 60;
+
+	private boolean boxHit(float ax, float ay, float aAngle, float bx, float by, float bAngle) {
+		return CarShape.hit(ax, ay, CarShape.cos(aAngle), CarShape.sin(aAngle), bx, by, CarShape.cos(bAngle),
+				CarShape.sin(bAngle));
+	}
+
+	@Test
+	public void testAgreesWithPolygonsOnRandomPairs() {
+		Rng rng = new Rng(21);
+		Polygon a = CarShape.newPolygon();
+		Polygon b = CarShape.newPolygon();
+		int hits = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			float ax = (rng.random() - 0.5f) * SPREAD;
+			float ay = (rng.random() - 0.5f) * SPREAD;
+			float aAngle = rng.random() * MathUtils.PI2;
+			float bx = (rng.random() - 0.5f) * SPREAD;
+			float by = (rng.random() - 0.5f) * SPREAD;
+			float bAngle = rng.random() * MathUtils.PI2;
+			a.setPosition(ax, ay);
+			a.setRotation(MathUtils.radDeg * aAngle);
+			b.setPosition(bx, by);
+			b.setRotation(MathUtils.radDeg * bAngle);
+			boolean isHit = Polys.hit(a, b);
+			assertEquals("Pair " + i, isHit, boxHit(ax, ay, aAngle, bx, by, bAngle));
+			if (isHit) {
+				hits++;
+			}
+		}
+		// Make sure that the corpus tests both outcomes plenty of times.
+		assertTrue(hits > PAIRS / 10 && hits < PAIRS * 9 / 10);
+	}
+
+	@Test
+	public void testCarsInTheSameLaneTouchWhenTheirEndsMeet() {
+		assertTrue(boxHit(0, 0, 0, 23.9f, 0, 0));
+		assertFalse(boxHit(0, 0, 0, 24.1f, 0, 0));
+	}
+
+	@Test
+	public void testCarsInNeighbouringLanesDoNotTouch() {
+		assertFalse(boxHit(0, 0, 0, 0, Car.LANE_WIDTH, 0));
+		assertFalse(boxHit(0, 0, MathUtils.PI / 2, Car.LANE_WIDTH, 0, MathUtils.PI / 2));
+	}
+
+	@Test
+	public void testCrossingCarsTouch() {
+		assertTrue(boxHit(0, 0, 0, 0, 10, MathUtils.PI / 2));
+	}
+}
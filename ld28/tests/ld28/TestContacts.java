@@ -0,0 +1,101 @@
+package ld28;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestContacts {
+	private static final float SPEED = 100;
+	private static final float EPSILON = 0.00001f;
+	// A straight piece on the first level's track, clear of the start line.
+	private static final int PIECE = 2;
+	private static final float PLAYER_DISTANCE = 30;
+	// Close enough behind the drone for the player to be touching it.
+	private static final float TOUCHING_GAP = 10;
+	private static final float APART_GAP = 80;
+	private static final int TICKS = 5;
+
+	private Simulator simulator;
+	private PlayerCar player;
+	private Car drone;
+
+	private void start(boolean isRespondingOncePerContact) {
+		simulator = new Simulator(InputSource.NONE, 3);
+		World world = simulator.world();
+		world.setRespondingOncePerContact(isRespondingOncePerContact);
+		world.setDroneCounts(new int[] { 1 });
+		simulator.start(false);
+		simulator.step();
+		for (Car car : world.cars()) {
+			if (car instanceof PlayerCar) {
+				player = (PlayerCar) car;
+			}
+			else {
+				drone = car;
+			}
+		}
+		place(player, PLAYER_DISTANCE);
+		place(drone, PLAYER_DISTANCE + APART_GAP);
+	}
+
+	// Puts a car in the middle lane of the test piece, going at the same speed as the other car so that they stay
+	// the same distance apart.
+	private void place(Car car, float distance) {
+		CarTable table = car.table;
+		int row = car.row;
+		table.pieceIndex[row] = PIECE;
+		table.currentSlot[row] = 0;
+		table.lane[row] = 0;
+		table.distance[row] = distance;
+		table.speed[row] = SPEED;
+		table.maxSpeed[row] = SPEED;
+		table.updatePosition(row);
+	}
+
+	// Steps the race, putting the player back up to speed before every tick, and returns the number of ticks on which
+	// the player slowed down because it ran into the drone.
+	private int countResponses(int ticks) {
+		int responses = 0;
+		for (int i = 0; i < ticks; i++) {
+			player.setSpeed(SPEED);
+			simulator.step();
+			if (player.speed() < SPEED) {
+				assertEquals(SPEED / 2, player.speed(), EPSILON);
+				responses++;
+			}
+		}
+		return responses;
+	}
+
+	@Test
+	public void testRespondsOnceWhileCarsStayTouching() {
+		start(true);
+		float health = player.health();
+		place(drone, player.distance() + TOUCHING_GAP);
+		assertEquals(1, countResponses(TICKS));
+		assertEquals(1, player.crashes());
+		assertEquals(health - 0.1f, player.health(), EPSILON);
+	}
+
+	@Test
+	public void testRespondsAgainAfterCarsSeparateAndTouchAgain() {
+		start(true);
+		place(drone, player.distance() + TOUCHING_GAP);
+		assertEquals(1, countResponses(TICKS));
+		place(drone, player.distance() + APART_GAP);
+		assertEquals(0, countResponses(TICKS));
+		place(drone, player.distance() + TOUCHING_GAP);
+		assertEquals(1, countResponses(TICKS));
+		assertEquals(2, player.crashes());
+	}
+
+	@Test
+	public void testRespondsEveryTickWithTheOldRule() {
+		start(false);
+		float health = player.health();
+		place(drone, player.distance() + TOUCHING_GAP);
+		assertEquals(TICKS, countResponses(TICKS));
+		assertEquals(TICKS, player.crashes());
+		assertEquals(health - 0.1f * TICKS, player.health(), 0.0001f);
+	}
+}
@@ -0,0 +1,68 @@
+package ld28;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestDeterminism {
+	private static final int TICKS = 5000;
+
+	private Simulator createSimulator(long seed, long inputSeed) {
+		int[] keys = { World.PLAYER_ONE_KEY };
+		Simulator simulator = new Simulator(new RandomInput(inputSeed, keys, 1.0f, Simulator.TICKS_PER_SECOND), seed);
+		simulator.start(false);
+		return simulator;
+	}
+
+	@Test
+	public void testSameSeedAndInputGiveSameHashOnEveryTick() {
+		Simulator a = createSimulator(42, 7);
+		Simulator b = createSimulator(42, 7);
+		for (int i = 0; i < TICKS; i++) {
+			a.step();
+			b.step();
+			assertEquals("Diverged at tick " + a.world().tick(), a.world().stateHash(), b.world().stateHash());
+		}
+	}
+
+	@Test
+	public void testDifferentSeedsGiveDifferentHashes() {
+		Simulator a = createSimulator(42, 7);
+		Simulator b = createSimulator(43, 7);
+		a.step(TICKS);
+		b.step(TICKS);
+		assertTrue(a.world().stateHash() != b.world().stateHash());
+	}
+
+	@Test
+	public void testDifferentInputsGiveDifferentHashes() {
+		Simulator a = createSimulator(42, 7);
+		Simulator b = createSimulator(42, 8);
+		a.step(TICKS);
+		b.step(TICKS);
+		assertTrue(a.world().stateHash() != b.world().stateHash());
+	}
+
+	@Test
+	public void testPrefetchingLevelsDoesNotChangeTheRace() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Simulator a = createSimulator(42, 7);
+			Simulator b = createSimulator(42, 7);
+			b.world().setPrefetchExecutor(executor);
+			for (int i = 0; i < TICKS * 4; i++) {
+				a.step();
+				b.step();
+				assertEquals("Diverged at tick " + a.world().tick(), a.world().stateHash(), b.world().stateHash());
+			}
+			assertTrue(a.world().level() > 0);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package ld28;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestGhosts {
+	private static final int SLOW_LAP = 100;
+	private static final int FAST_LAP = 50;
+
+	private LapTimeline lap(int length) {
+		LapTimeline lap = new LapTimeline(length);
+		for (int i = 0; i < length; i++) {
+			lap.add(0, 0, i);
+		}
+		return lap;
+	}
+
+	@Test
+	public void testFasterLapDoesNotChangeTheLapAGhostIsFollowing() {
+		TrackBuilder track = new TrackBuilder();
+		World.generateTrack(World.levelDef(0), track);
+		CarTable table = new CarTable(1);
+		table.reset(track, 1);
+		Ghosts ghosts = new Ghosts(1);
+		ghosts.offer(0, lap(SLOW_LAP));
+		GhostCar ghost = new GhostCar(table, null);
+		ghost.spawn(ghosts.bestLap(0));
+		for (int i = 0; i < FAST_LAP + 20; i++) {
+			ghost.update();
+		}
+
+		// The ghost is now past the end of the faster lap.
+		ghosts.offer(0, lap(FAST_LAP));
+		assertEquals(FAST_LAP, ghosts.bestLap(0).length());
+		assertEquals(SLOW_LAP, ghost.lapLength());
+		for (int i = 0; i < SLOW_LAP * 3; i++) {
+			ghost.update();
+			assertTrue(ghost.tick() < SLOW_LAP);
+			assertEquals(ghost.tick(), ghost.distance(), 0);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package ld28;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestTrackSweep {
+	// Long enough for a fast car to go right through a slow one.
+	private static final float TICK_LENGTH = 0.1f;
+	private static final int CROWD = 2000;
+
+	private final TrackBuilder track = new TrackBuilder();
+	private final CarTable table = new CarTable(2);
+	private final List<Car> cars = new ArrayList<Car>();
+	private final TrackSweep sweep = new TrackSweep();
+
+	public TestTrackSweep() {
+		World.generateTrack(World.levelDef(0), track);
+		table.reset(track, 2);
+		sweep.reset(track);
+	}
+
+	private void addCar(int slot, float distance, float speed) {
+		Car car = new Car(table, null);
+		car.spawn(0, slot, speed);
+		table.distance[car.row] = distance;
+		table.speed[car.row] = speed;
+		table.updatePosition(car.row);
+		cars.add(car);
+	}
+
+	@Test
+	public void testFastCarGoingThroughSlowCarIsAHit() {
+		addCar(1, 30, 100);
+		addCar(1, 0, 800);
+		table.update(TICK_LENGTH);
+		assertTrue(cars.get(1).distance() - cars.get(0).distance() > 2 * Car.HALF_WIDTH);
+
+		assertEquals(1, sweep.findPairs(cars));
+		assertEquals(0, cars.get(0).hit(cars.get(1)));
+		assertEquals(1, sweep.sweptHit(0));
+
+		assertEquals(1, sweep.findLanePairs(cars));
+		assertTrue(sweep.isFirstAhead(0));
+	}
+
+	@Test
+	public void testFastCarPassingInAnotherLaneIsNotAHit() {
+		addCar(1, 30, 100);
+		addCar(0, 0, 800);
+		table.update(TICK_LENGTH);
+
+		for (int k = 0, n = sweep.findPairs(cars); k < n; k++) {
+			assertEquals(0, sweep.sweptHit(k));
+		}
+		assertEquals(0, sweep.findLanePairs(cars));
+	}
+
+	@Test
+	public void testThreadsTestPairsTheSameAsOneThread() {
+		CarTable crowdTable = new CarTable(CROWD);
+		crowdTable.reset(track, CROWD);
+		Rng rng = new Rng(25);
+		List<Car> crowd = new ArrayList<Car>();
+		for (int i = 0; i < CROWD; i++) {
+			Car car = new Car(crowdTable, null);
+			car.spawn(rng.random(0, track.pieces().size() - 1), rng.random(-2, 2), rng.random(300, 400));
+			crowd.add(car);
+		}
+		crowdTable.update(TICK_LENGTH);
+		int numPairs = sweep.findPairs(crowd);
+
+		NarrowPhase oneThread = new NarrowPhase();
+		oneThread.test(sweep, crowd, numPairs);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			NarrowPhase fourThreads = new NarrowPhase();
+			fourThreads.setExecutor(executor, 4);
+			fourThreads.test(sweep, crowd, numPairs);
+			int touching = 0;
+			for (int k = 0; k < numPairs; k++) {
+				assertEquals("Pair " + k, oneThread.result(k), fourThreads.result(k));
+				if (oneThread.result(k) == NarrowPhase.TOUCHING) {
+					touching++;
+				}
+			}
+			assertTrue(touching > 0 && touching < numPairs);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
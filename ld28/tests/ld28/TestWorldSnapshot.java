@@ -0,0 +1,130 @@
+package ld28;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestWorldSnapshot {
+	private static final int TICKS = 20000;
+	// Where the number of cars is in an encoded snapshot, after the fields of the World that come before it.
+	private static final int COUNT_OFFSET = 4 + 1 + 4 + 1 + 4 + 4 + 8 + 8 + 1 + 8 + 8 + 8 + 4 + 4 + 4 + 4;
+
+	private Simulator createSimulator(long seed) {
+		Simulator simulator = new Simulator(InputSource.NONE, seed);
+		simulator.start(false);
+		return simulator;
+	}
+
+	private long[] run(Simulator simulator) {
+		long[] hashes = new long[TICKS];
+		for (int i = 0; i < TICKS; i++) {
+			simulator.step();
+			hashes[i] = simulator.world().stateHash();
+		}
+		return hashes;
+	}
+
+	@Test
+	public void testRestoringReplaysTheSameRace() {
+		Simulator simulator = createSimulator(11);
+		simulator.step(2000);
+		WorldSnapshot snapshot = new WorldSnapshot();
+		simulator.world().save(snapshot);
+		long[] expected = run(simulator);
+		simulator.world().restore(snapshot);
+		assertArrayEquals(expected, run(simulator));
+	}
+
+	@Test
+	public void testRestoringIntoAnotherWorldReplaysTheSameRace() {
+		Simulator simulator = createSimulator(11);
+		simulator.step(2000);
+		WorldSnapshot snapshot = new WorldSnapshot();
+		simulator.world().save(snapshot);
+		long[] expected = run(simulator);
+
+		Simulator other = createSimulator(99);
+		other.step(10);
+		other.world().restore(snapshot);
+		assertArrayEquals(expected, run(other));
+	}
+
+	@Test
+	public void testEncodedSnapshotReplaysTheSameRace() throws Exception {
+		Simulator simulator = createSimulator(11);
+		simulator.step(2000);
+		WorldSnapshot snapshot = new WorldSnapshot();
+		simulator.world().save(snapshot);
+		ByteBuffer buffer = ByteBuffer.allocate(snapshot.encodedSize());
+		snapshot.encode(buffer);
+		buffer.flip();
+		long[] expected = run(simulator);
+
+		WorldSnapshot decoded = new WorldSnapshot(1);
+		decoded.decode(buffer);
+		Simulator other = createSimulator(99);
+		other.world().restore(decoded);
+		assertArrayEquals(expected, run(other));
+	}
+
+	@Test
+	public void testSnapshotTakenWhileCarsAreTouchingReplaysTheSameRace() throws Exception {
+		Simulator simulator = createSimulator(11);
+		WorldSnapshot snapshot = new WorldSnapshot();
+		do {
+			simulator.step();
+			simulator.world().save(snapshot);
+		} while (snapshot.numContacts == 0 && simulator.ticks() < TICKS);
+		assertTrue(snapshot.numContacts > 0);
+		ByteBuffer buffer = ByteBuffer.allocate(snapshot.encodedSize());
+		snapshot.encode(buffer);
+		buffer.flip();
+		long[] expected = run(simulator);
+
+		WorldSnapshot decoded = new WorldSnapshot(1);
+		decoded.decode(buffer);
+		Simulator other = createSimulator(99);
+		other.world().restore(decoded);
+		assertArrayEquals(expected, run(other));
+	}
+
+	private WorldSnapshot saveRace() {
+		Simulator simulator = createSimulator(11);
+		simulator.step(2000);
+		WorldSnapshot snapshot = new WorldSnapshot();
+		simulator.world().save(snapshot);
+		return snapshot;
+	}
+
+	private ByteBuffer encode(WorldSnapshot snapshot) {
+		ByteBuffer buffer = ByteBuffer.allocate(snapshot.encodedSize());
+		snapshot.encode(buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	@Test(expected = IOException.class)
+	public void testDecodingRejectsMoreCarsThanTheBufferHolds() throws Exception {
+		ByteBuffer buffer = encode(saveRace());
+		buffer.putInt(COUNT_OFFSET, Integer.MAX_VALUE / 2);
+		new WorldSnapshot(1).decode(buffer);
+	}
+
+	@Test(expected = IOException.class)
+	public void testDecodingRejectsACarOffTheTrack() throws Exception {
+		WorldSnapshot snapshot = saveRace();
+		snapshot.pieceIndex[0] = World.numPieces(World.levelDef(snapshot.level));
+		new WorldSnapshot(1).decode(encode(snapshot));
+	}
+
+	@Test(expected = IOException.class)
+	public void testDecodingRejectsACarOutsideTheLanes() throws Exception {
+		WorldSnapshot snapshot = saveRace();
+		snapshot.currentSlot[0] = (int) Car.MAX_SLOT + 1;
+		new WorldSnapshot(1).decode(encode(snapshot));
+	}
+}
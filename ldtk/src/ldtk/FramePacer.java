@@ -0,0 +1,142 @@
+package ldtk;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds frames to a steady interval. At the end of each frame the kernel asks the pacer to wait until the next frame
+ * is due. Frames are due on a fixed grid rather than one interval after the previous frame finished, so a frame that
+ * runs late doesn't push all of the following frames back. If the program falls more than a whole interval behind then
+ * the grid starts again from now, rather than rushing frames out to catch up.
+ * <p>
+ * The pacer sleeps for most of the wait and yields for the last little bit, as sleeps tend to overshoot. It keeps a
+ * window of recent frame intervals and reports how far they were from the target as percentiles, which is what you
+ * notice as judder.
+ */
+public class FramePacer {
+
+	private static final int WINDOW = 600;
+	private static final long SPIN_NANOS = 500000L;
+	private static final float LATE_RATIO = 1.5f;
+
+	private final long intervalNanos;
+	private final long[] jitters = new long[WINDOW];
+	private final long[] sorted = new long[WINDOW];
+	private int index;
+	private int count;
+	private long nextFrameTime;
+	private long lastFrameTime;
+	private int frames;
+	private int lateFrames;
+
+	/**
+	 * Creates a pacer.
+	 *
+	 * @param framesPerSecond the target frame rate. It should be no higher than the display's refresh rate if vsync
+	 *        is on, or the two will fight.
+	 */
+	public FramePacer(float framesPerSecond) {
+		this.intervalNanos = Math.round(1000000000.0 / framesPerSecond);
+	}
+
+	/**
+	 * Returns the target interval between frames.
+	 *
+	 * @return the interval in nanoseconds.
+	 */
+	public long intervalNanos() {
+		return intervalNanos;
+	}
+
+	/**
+	 * Waits until the next frame is due, then records how long this frame's interval was.
+	 */
+	void pace() {
+		long now = System.nanoTime();
+		if (nextFrameTime == 0) {
+			lastFrameTime = now;
+			nextFrameTime = now + intervalNanos;
+			return;
+		}
+		long remaining = nextFrameTime - now;
+		while (remaining > 0) {
+			if (remaining > SPIN_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			}
+			else {
+				Thread.yield();
+			}
+			now = System.nanoTime();
+			remaining = nextFrameTime - now;
+		}
+
+		long interval = now - lastFrameTime;
+		record(Math.abs(interval - intervalNanos));
+		frames++;
+		if (interval > intervalNanos * LATE_RATIO) {
+			lateFrames++;
+		}
+		lastFrameTime = now;
+		nextFrameTime += intervalNanos;
+		if (now - nextFrameTime > intervalNanos) {
+			nextFrameTime = now + intervalNanos;
+		}
+	}
+
+	/**
+	 * Forgets when the last frame was, so that a pause isn't counted as a late frame.
+	 */
+	void reset() {
+		nextFrameTime = 0;
+	}
+
+	private void record(long jitter) {
+		jitters[index] = jitter;
+		index = (index + 1) % WINDOW;
+		if (count < WINDOW) {
+			count++;
+		}
+	}
+
+	/**
+	 * Returns a percentile of how far recent frame intervals were from the target. This sorts the window, so it's for
+	 * reporting rather than for calling every frame.
+	 *
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the jitter in nanoseconds.
+	 */
+	public long jitterPercentile(float percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		System.arraycopy(jitters, 0, sorted, 0, count);
+		Arrays.sort(sorted, 0, count);
+		int i = (int) Math.ceil(percentile / 100.0f * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, i))];
+	}
+
+	/**
+	 * Returns the number of frames that came more than half an interval late.
+	 *
+	 * @return the number of late frames.
+	 */
+	public int lateFrames() {
+		return lateFrames;
+	}
+
+	/**
+	 * Returns the number of frames that have been paced.
+	 *
+	 * @return the number of frames.
+	 */
+	public int frames() {
+		return frames;
+	}
+
+	@Override
+	public String toString() {
+		return "target " + intervalNanos / 1000 + "us, jitter p50 " + jitterPercentile(50) / 1000 + "us, p90 " +
+				jitterPercentile(90) / 1000 + "us, p99 " + jitterPercentile(99) / 1000 + "us, " + lateFrames + " of " +
+				frames + " frames late";
+	}
+}
@@ -0,0 +1,200 @@
+package ldtk;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Picks a quality level that the device can keep up with. The kernel tells it how long each frame took, both from one
+ * frame to the next and in the kernel's own work, and it keeps rolling averages of both. If the averages go over
+ * budget it drops a level, and if they stay comfortably under budget it raises a level. Game code decides what each
+ * level means.
+ * <p>
+ * There's hysteresis in three places. The thresholds for going down and up are far apart. A whole window of frames has
+ * to pass after a change before the next decision. And if raising the level makes it drop straight back down, the wait
+ * before trying to raise it again doubles, so a device that sits on the boundary settles rather than flickering.
+ */
+public class Governor {
+
+	private static final String TAG = "Governor";
+	private static final int DEFAULT_WINDOW = 60;
+	private static final float DOWN_FRAME_RATIO = 1.2f;
+	private static final float DOWN_WORK_RATIO = 0.9f;
+	private static final float UP_FRAME_RATIO = 1.05f;
+	private static final float UP_WORK_RATIO = 0.6f;
+	private static final int MAX_UP_HOLD_WINDOWS = 32;
+
+	private final float[] frameTimes;
+	private final float[] workTimes;
+	private final int[] framesAtLevel;
+	private float budget;
+	private int minLevel;
+	private int maxLevel;
+	private int level;
+	private int index;
+	private int count;
+	private double frameTimeSum;
+	private double workTimeSum;
+	private int framesSinceChange;
+	private int upHoldWindows = 1;
+	private boolean wasLastChangeUp;
+	private int downgrades;
+	private int upgrades;
+
+	/**
+	 * Creates a governor that starts at the highest level.
+	 *
+	 * @param levels the number of quality levels. Level 0 is the lowest quality.
+	 * @param budget the time that a frame should take, in seconds.
+	 */
+	public Governor(int levels, float budget) {
+		this.frameTimes = new float[DEFAULT_WINDOW];
+		this.workTimes = new float[DEFAULT_WINDOW];
+		this.framesAtLevel = new int[levels];
+		this.budget = budget;
+		this.minLevel = 0;
+		this.maxLevel = levels - 1;
+		this.level = maxLevel;
+	}
+
+	/**
+	 * Restricts the levels that the governor may choose from.
+	 *
+	 * @param minLevel the lowest level.
+	 * @param maxLevel the highest level.
+	 */
+	public void setBounds(int minLevel, int maxLevel) {
+		this.minLevel = Math.max(0, minLevel);
+		this.maxLevel = Math.min(framesAtLevel.length - 1, maxLevel);
+		level = Math.max(this.minLevel, Math.min(this.maxLevel, level));
+	}
+
+	/**
+	 * Sets the time that a frame should take.
+	 *
+	 * @param budget the budget in seconds.
+	 */
+	public void setBudget(float budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Called by the kernel at the end of each frame.
+	 *
+	 * @param frameTime the time since the previous frame, in seconds.
+	 * @param workTime the time that the kernel spent updating and drawing this frame, in seconds.
+	 */
+	void onFrame(float frameTime, float workTime) {
+		if (count == frameTimes.length) {
+			frameTimeSum -= frameTimes[index];
+			workTimeSum -= workTimes[index];
+		}
+		else {
+			count++;
+		}
+		frameTimes[index] = frameTime;
+		workTimes[index] = workTime;
+		frameTimeSum += frameTime;
+		workTimeSum += workTime;
+		index = (index + 1) % frameTimes.length;
+		framesAtLevel[level]++;
+		framesSinceChange++;
+
+		if (framesSinceChange < frameTimes.length || count < frameTimes.length) {
+			return;
+		}
+		float meanFrameTime = meanFrameTime();
+		float meanWorkTime = meanWorkTime();
+		if (level > minLevel && (meanFrameTime > budget * DOWN_FRAME_RATIO || meanWorkTime > budget * DOWN_WORK_RATIO)) {
+			if (wasLastChangeUp && framesSinceChange <= frameTimes.length * 2) {
+				// We've just come up and it didn't work, so wait longer before trying again.
+				upHoldWindows = Math.min(upHoldWindows * 2, MAX_UP_HOLD_WINDOWS);
+			}
+			changeLevel(level - 1, meanFrameTime, meanWorkTime);
+			downgrades++;
+			wasLastChangeUp = false;
+		}
+		else if (level < maxLevel && framesSinceChange >= frameTimes.length * upHoldWindows &&
+				meanFrameTime < budget * UP_FRAME_RATIO && meanWorkTime < budget * UP_WORK_RATIO) {
+			changeLevel(level + 1, meanFrameTime, meanWorkTime);
+			upgrades++;
+			wasLastChangeUp = true;
+		}
+	}
+
+	private void changeLevel(int newLevel, float meanFrameTime, float meanWorkTime) {
+		Gdx.app.log(TAG, "Quality level " + level + " -> " + newLevel + " (frame " + (int) (meanFrameTime * 1000000) +
+				"us, work " + (int) (meanWorkTime * 1000000) + "us)");
+		level = newLevel;
+		framesSinceChange = 0;
+	}
+
+	/**
+	 * Returns the current quality level.
+	 *
+	 * @return the level, where 0 is the lowest quality.
+	 */
+	public int level() {
+		return level;
+	}
+
+	/**
+	 * Returns the level that the governor has spent the most frames at, which is what the device has settled on.
+	 *
+	 * @return the level.
+	 */
+	public int settledLevel() {
+		int settled = level;
+		for (int i = 0; i < framesAtLevel.length; i++) {
+			if (framesAtLevel[i] > framesAtLevel[settled]) {
+				settled = i;
+			}
+		}
+		return settled;
+	}
+
+	/**
+	 * Returns the number of frames that have been drawn at a level.
+	 *
+	 * @param level the level.
+	 * @return the number of frames.
+	 */
+	public int framesAtLevel(int level) {
+		return framesAtLevel[level];
+	}
+
+	public int downgrades() {
+		return downgrades;
+	}
+
+	public int upgrades() {
+		return upgrades;
+	}
+
+	/**
+	 * Returns the mean time between frames over the rolling window.
+	 *
+	 * @return the mean frame time in seconds.
+	 */
+	public float meanFrameTime() {
+		return (count == 0) ? 0.0f : (float) (frameTimeSum / count);
+	}
+
+	/**
+	 * Returns the mean time that the kernel spent working per frame over the rolling window.
+	 *
+	 * @return the mean work time in seconds.
+	 */
+	public float meanWorkTime() {
+		return (count == 0) ? 0.0f : (float) (workTimeSum / count);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("level ").append(level).append(", settled on ").append(settledLevel());
+		sb.append(", ").append(downgrades).append(" down, ").append(upgrades).append(" up, frames at each level");
+		for (int i = 0; i < framesAtLevel.length; i++) {
+			sb.append(' ').append(framesAtLevel[i]);
+		}
+		return sb.toString();
+	}
+}
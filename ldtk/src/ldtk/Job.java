@@ -0,0 +1,96 @@
+package ldtk;
+
+/**
+ * A long piece of work that can be done a little at a time, so that it can be spread across frames instead of
+ * causing a hitch. Subclasses do a small slice of the work each time run() is called, and remember where they got to.
+ * The job keeps statistics about how it was scheduled.
+ */
+public abstract class Job {
+
+	private final String name;
+	private long runNanos;
+	private int runs;
+	private int deferrals;
+	int consecutiveDeferrals;
+	boolean isFinished;
+
+	/**
+	 * Creates a job.
+	 * 
+	 * @param name a name for the job, for diagnostics.
+	 */
+	public Job(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Does the next slice of the job's work. A slice should take a small fraction of a frame.
+	 * 
+	 * @return true if the job is finished, otherwise false.
+	 */
+	protected abstract boolean run();
+
+	/**
+	 * Called by the scheduler to run a slice and record how long it took.
+	 */
+	void runSlice() {
+		long startTime = System.nanoTime();
+		isFinished = run();
+		runNanos += System.nanoTime() - startTime;
+		runs++;
+		consecutiveDeferrals = 0;
+	}
+
+	/**
+	 * Called by the scheduler when the job was waiting to run but the frame ran out of time.
+	 */
+	void defer() {
+		deferrals++;
+		consecutiveDeferrals++;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Returns true if the job has finished, or has been cancelled.
+	 * 
+	 * @return true if the job is finished.
+	 */
+	public boolean isFinished() {
+		return isFinished;
+	}
+
+	/**
+	 * Returns the total time spent running the job.
+	 * 
+	 * @return the time in nanoseconds.
+	 */
+	public long runNanos() {
+		return runNanos;
+	}
+
+	/**
+	 * Returns the number of slices that the job has run.
+	 * 
+	 * @return the number of slices.
+	 */
+	public int runs() {
+		return runs;
+	}
+
+	/**
+	 * Returns the number of frames in which the job was waiting to run but didn't, because the frame was out of time.
+	 * 
+	 * @return the number of deferrals.
+	 */
+	public int deferrals() {
+		return deferrals;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + runs + " runs in " + (runNanos / 1000) + "us, " + deferrals + " deferrals";
+	}
+}
@@ -0,0 +1,101 @@
+package ldtk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * A cooperative scheduler for jobs that are spread across frames. The kernel gives it whatever is left of each frame's
+ * time budget once the current state has been updated and drawn, and it runs job slices, oldest job first, until
+ * that time is used up. A job that keeps being deferred because there is never any time left gets one slice anyway
+ * every so often, so that it can't be starved.
+ */
+public class Jobs {
+
+	private static final String TAG = "Jobs";
+	private static final int MAX_CONSECUTIVE_DEFERRALS = 10;
+
+	private final List<Job> jobs = new ArrayList<Job>();
+	private boolean isLogging;
+
+	/**
+	 * Adds a job to the end of the queue.
+	 * 
+	 * @param job the job.
+	 */
+	public void add(Job job) {
+		job.isFinished = false;
+		job.consecutiveDeferrals = 0;
+		jobs.add(job);
+	}
+
+	/**
+	 * Removes a job from the queue without finishing it. The job counts as finished afterwards.
+	 * 
+	 * @param job the job.
+	 */
+	public void cancel(Job job) {
+		if (jobs.remove(job)) {
+			job.isFinished = true;
+		}
+	}
+
+	/**
+	 * Runs a job to completion immediately, whatever the time budget. Use this when its results are needed now.
+	 * 
+	 * @param job the job, which may or may not be queued.
+	 */
+	public void finish(Job job) {
+		while (!job.isFinished()) {
+			job.runSlice();
+		}
+		jobs.remove(job);
+	}
+
+	/**
+	 * Returns the number of jobs waiting to finish.
+	 * 
+	 * @return the number of jobs.
+	 */
+	public int pending() {
+		return jobs.size();
+	}
+
+	/**
+	 * Chooses whether to log each job's statistics when it finishes.
+	 * 
+	 * @param isLogging true to log statistics.
+	 */
+	public void setLogging(boolean isLogging) {
+		this.isLogging = isLogging;
+	}
+
+	/**
+	 * Runs job slices until the deadline passes or there are no jobs left. Called by the kernel once per frame.
+	 * 
+	 * @param deadline the time, as returned by System.nanoTime(), by which to stop.
+	 */
+	void run(long deadline) {
+		int i = 0;
+		while (i < jobs.size()) {
+			Job job = jobs.get(i);
+			boolean isOutOfTime = System.nanoTime() - deadline >= 0;
+			if (isOutOfTime && job.consecutiveDeferrals < MAX_CONSECUTIVE_DEFERRALS) {
+				job.defer();
+				i++;
+				continue;
+			}
+			job.runSlice();
+			if (job.isFinished()) {
+				jobs.remove(i);
+				if (isLogging) {
+					Gdx.app.log(TAG, job.toString());
+				}
+			}
+			else if (isOutOfTime) {
+				i++;
+			}
+		}
+	}
+}
@@ -3,7 +3,12 @@ package ldtk;
 
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 /**
  * This is the kernel that drives programs that are based on LDTK. Amongst other things it provides a source of time, a
@@ -16,6 +21,8 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 public class Kernel implements ApplicationListener {
 
 	private static final String TAG = "Kernel";
+	private static final int WORKER_QUEUE_CAPACITY = 32;
+	private static final int WARM_UP_SPRITES = 12000;
 
 	/**
 	 * A time source available to all LDTK-based programs.
@@ -56,9 +63,46 @@ public class Kernel implements ApplicationListener {
 	 * The means by which client code can load and unload groups of assets.
 	 */
 	public static Assets assets;
-	
+
+	/**
+	 * The means by which client code finds out if the screen has just been touched.
+	 */
+	public static Touches touches;
+
+	/**
+	 * The means by which client code spreads long pieces of work across frames.
+	 */
+	public static Jobs jobs;
+
+	/**
+	 * The means by which client code runs CPU-bound tasks on background threads.
+	 */
+	public static Workers workers;
+
+	/**
+	 * The means by which client code finds out what quality level the device can keep up with.
+	 */
+	public static Governor governor;
+
+	/**
+	 * The means by which client code finds out how steadily frames are being paced. It is null unless frame pacing
+	 * has been turned on.
+	 */
+	public static FramePacer pacer;
+
 	private StateSelector stateSelector;
 	private State currentState;
+	private boolean isCurrentStateUpdated;
+	private long tickNanos;
+	private int maxSubsteps;
+	private long accumulatorNanos;
+	private long lastFrameStartTime;
+	private float pacedFramesPerSecond;
+	private boolean wasContinuous = true;
+	private long frameBudgetNanos = 1000000000L / 60;
+	private int qualityLevels = 1;
+	private Runnable warmUp;
+	private static float warmUpTime;
 	
 	/**
 	 * Creates the LDTK kernel.
@@ -69,6 +113,103 @@ public class Kernel implements ApplicationListener {
 		this.stateSelector = stateSelector;
 	}
 
+	/**
+	 * Switches the kernel to a fixed timestep. Each frame the kernel updates the current state as many times as it
+	 * takes to catch up with the real time that has elapsed, then draws it once. Any time left over is reported via
+	 * {@link Time#alpha} so that drawing code can interpolate between ticks.
+	 * 
+	 * @param ticksPerSecond the number of ticks per second.
+	 * @param maxSubsteps the maximum number of ticks in one frame. If the kernel falls further behind than this then
+	 *            it drops the excess time rather than spiralling.
+	 */
+	public void setFixedTimestep(float ticksPerSecond, int maxSubsteps) {
+		this.tickNanos = Math.round(1000000000.0 / ticksPerSecond);
+		this.maxSubsteps = maxSubsteps;
+		this.accumulatorNanos = 0;
+	}
+
+	/**
+	 * Switches the kernel to a variable timestep, where the current state is updated once per frame using the frame's
+	 * delta time. This is the default.
+	 */
+	public void setVariableTimestep() {
+		this.tickNanos = 0;
+		this.accumulatorNanos = 0;
+	}
+
+	/**
+	 * Returns true if the kernel is using a fixed timestep.
+	 * 
+	 * @return true if the timestep is fixed.
+	 */
+	public boolean isFixedTimestep() {
+		return tickNanos > 0;
+	}
+
+	/**
+	 * Asks for another frame to be drawn. This only matters while the current state is static, as otherwise frames
+	 * are drawn all the time. It may be called from any thread.
+	 */
+	public static void invalidate() {
+		if (Gdx.graphics != null) {
+			Gdx.graphics.requestRendering();
+		}
+	}
+
+	/**
+	 * Turns on frame pacing, which holds frames to a steady interval and measures how steady they are. The frame
+	 * budget is set to the same interval.
+	 * 
+	 * @param framesPerSecond the target frame rate.
+	 */
+	public void setFramePacing(float framesPerSecond) {
+		this.pacedFramesPerSecond = framesPerSecond;
+		setFrameBudget(1.0f / framesPerSecond);
+	}
+
+	/**
+	 * Sets how long a frame should take. Whatever is left of the budget after the current state has been updated and
+	 * drawn is given to queued jobs.
+	 * 
+	 * @param seconds the frame budget in seconds.
+	 */
+	public void setFrameBudget(float seconds) {
+		this.frameBudgetNanos = (long) (seconds * 1000000000L);
+		if (governor != null) {
+			governor.setBudget(seconds);
+		}
+	}
+
+	/**
+	 * Sets the number of quality levels that the governor chooses between. The default is one, which turns the
+	 * governor off.
+	 * 
+	 * @param qualityLevels the number of quality levels.
+	 */
+	public void setQualityLevels(int qualityLevels) {
+		this.qualityLevels = qualityLevels;
+	}
+
+	/**
+	 * Sets something to run while the default assets load, such as a headless run of the game's simulation, so that
+	 * its hot paths have been compiled before they're needed. It runs on its own thread, and the sprite batch is warmed
+	 * up at the same time. The first state isn't entered until both have finished.
+	 * 
+	 * @param warmUp the warm-up, or null for none.
+	 */
+	public void setWarmUp(Runnable warmUp) {
+		this.warmUp = warmUp;
+	}
+
+	/**
+	 * Returns how long the warm-up held up startup, so that its cost can be weighed against what it saves later.
+	 * 
+	 * @return the time in seconds, or 0 if there was no warm-up.
+	 */
+	public static float warmUpTime() {
+		return warmUpTime;
+	}
+
 	@Override
 	public void create() {
 		Gdx.app.log(TAG, "create()");
@@ -79,9 +220,86 @@ public class Kernel implements ApplicationListener {
 		fonts = new Fonts();
 		tunes = new Tunes();
 		assets= new Assets(images, fonts, sounds, tunes);
+		touches = new Touches();
+		jobs = new Jobs();
+		governor = new Governor(qualityLevels, frameBudgetNanos / 1000000000.0f);
+		pacer = (pacedFramesPerSecond > 0.0f) ? new FramePacer(pacedFramesPerSecond) : null;
+		workers = new Workers(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), WORKER_QUEUE_CAPACITY);
+		Gdx.input.setInputProcessor(touches);
+		long warmUpStartTime = System.nanoTime();
+		WarmUpThread warmUpThread = null;
+		if (warmUp != null) {
+			warmUpThread = new WarmUpThread(warmUp);
+			warmUpThread.start();
+		}
 		batch = createSpriteBatch();
 		createCamera();
 		assets.loadDefaults();
+		if (warmUpThread != null) {
+			warmUpBatch();
+			long loadedTime = System.nanoTime();
+			warmUpThread.finish();
+			long endTime = System.nanoTime();
+			warmUpTime = (endTime - warmUpStartTime) / 1000000000.0f;
+			Gdx.app.log(TAG, "Warm-up took " + warmUpThread.runNanos / 1000000 + "ms, startup waited " +
+					(endTime - loadedTime) / 1000000 + "ms for it after loading");
+		}
+	}
+
+	/**
+	 * Draws lots of sprites the way that Image does, so that the sprite batch's paths are compiled, then clears them
+	 * away.
+	 */
+	private void warmUpBatch() {
+		Pixmap pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+		pixmap.setColor(Color.WHITE);
+		pixmap.fill();
+		Texture texture = new Texture(pixmap);
+		pixmap.dispose();
+		TextureRegion region = new TextureRegion(texture);
+		batch.begin();
+		for (int i = 0; i < WARM_UP_SPRITES; i++) {
+			batch.draw(region, 0, 0);
+			batch.draw(region, 0, 0, 0.5f, 0.5f, 1, 1, 1.0f, 1.0f, i);
+		}
+		batch.end();
+		texture.dispose();
+		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+	}
+
+	/**
+	 * Runs the warm-up and times it.
+	 */
+	private static class WarmUpThread extends Thread {
+		private final Runnable warmUp;
+		private long runNanos;
+
+		WarmUpThread(Runnable warmUp) {
+			super("Warm-up");
+			this.warmUp = warmUp;
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.nanoTime();
+			warmUp.run();
+			runNanos = System.nanoTime() - startTime;
+		}
+
+		void finish() {
+			boolean isInterrupted = false;
+			while (isAlive()) {
+				try {
+					join();
+				}
+				catch (InterruptedException e) {
+					isInterrupted = true;
+				}
+			}
+			if (isInterrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	protected Camera createCamera() {
@@ -96,34 +314,92 @@ public class Kernel implements ApplicationListener {
 
 	@Override
 	public void dispose() {
+		Gdx.app.log(TAG, "dispose()");
+		workers.shutdown();
 	}
 
 	@Override
 	public void render() {
-		Kernel.time.delta = Gdx.graphics.getDeltaTime();
-		Kernel.time.time += Kernel.time.delta;
-
-	    State nextState = stateSelector.select();
-	    if (currentState != nextState) {
-	    	if (currentState != null) {
-	    		currentState.exit();
-	    	}
-	    	if (nextState != null) {
-	    		nextState.enter();
-	    	}
-	        currentState = nextState;
-	    }
-	    if (currentState != null) {
-	    	currentState.update();
-	    }
+		long frameStartTime = System.nanoTime();
+		long frameNanos = (lastFrameStartTime == 0) ? 0 : frameStartTime - lastFrameStartTime;
+		lastFrameStartTime = frameStartTime;
+		if (!wasContinuous) {
+			// When drawing on demand the gaps between frames are idle time, not time that has to be caught up on.
+			frameNanos = isFixedTimestep() ? tickNanos : frameBudgetNanos;
+		}
+
+		// Hand back the results of background tasks before anything is updated, so states see them at a fixed point.
+		workers.deliver();
+
+		if (isFixedTimestep()) {
+			accumulatorNanos += frameNanos;
+			int substeps = 0;
+			while (accumulatorNanos >= tickNanos && substeps < maxSubsteps) {
+				tick(tickNanos);
+				accumulatorNanos -= tickNanos;
+				substeps++;
+			}
+			if (accumulatorNanos >= tickNanos) {
+				// We've hit the substep limit, so drop the time that we can't catch up on.
+				accumulatorNanos = 0;
+			}
+			Kernel.time.alpha = accumulatorNanos / (float) tickNanos;
+		}
+		else {
+			tick(frameNanos);
+			Kernel.time.alpha = 1.0f;
+		}
 
 		Kernel.batch.begin();
 
-		if (currentState != null) {
+		// A state is never asked to draw itself until it has been updated at least once.
+		if (currentState != null && isCurrentStateUpdated) {
 			currentState.draw();
 		}
 		
 		Kernel.batch.end();
+
+		// Frames drawn on demand say nothing about whether the device can keep up, so they're left out.
+		boolean isContinuous = Gdx.graphics.isContinuousRendering();
+		if (isContinuous && wasContinuous) {
+			governor.onFrame(frameNanos / 1000000000.0f, (System.nanoTime() - frameStartTime) / 1000000000.0f);
+		}
+		jobs.run(frameStartTime + frameBudgetNanos);
+		if (!isContinuous && jobs.pending() > 0) {
+			invalidate();
+		}
+		if (pacer != null) {
+			if (isContinuous) {
+				pacer.pace();
+			}
+			else {
+				pacer.reset();
+			}
+		}
+		wasContinuous = isContinuous;
+	}
+
+	private void tick(long deltaNanos) {
+		Kernel.time.advance(deltaNanos);
+		touches.latch();
+
+		State nextState = stateSelector.select();
+		if (currentState != nextState) {
+			if (currentState != null) {
+				currentState.exit();
+				workers.cancelAll(currentState);
+			}
+			if (nextState != null) {
+				nextState.enter();
+			}
+			Gdx.graphics.setContinuousRendering(nextState == null || !nextState.isStatic());
+			currentState = nextState;
+			isCurrentStateUpdated = false;
+		}
+		if (currentState != null) {
+			currentState.update();
+			isCurrentStateUpdated = true;
+		}
 	}
 
 	@Override
@@ -135,10 +411,26 @@ public class Kernel implements ApplicationListener {
 	@Override
 	public void pause() {
 		Gdx.app.log(TAG, "pause()");
+		// Pausing is the last thing that a mobile app is sure to see, so this is where we report how it's been doing.
+		Gdx.app.log(TAG, "Quality " + governor);
+		if (pacer != null) {
+			Gdx.app.log(TAG, "Pacing " + pacer);
+		}
+		if (currentState != null) {
+			currentState.pause();
+		}
 	}
 
 	@Override
 	public void resume() {
 		Gdx.app.log(TAG, "resume()");
+		// Don't count the time spent paused as a frame.
+		lastFrameStartTime = 0;
+		if (pacer != null) {
+			pacer.reset();
+		}
+		if (currentState != null) {
+			currentState.resume();
+		}
 	}
 }
@@ -17,6 +17,31 @@ public class State {
 	public void exit() {
 	}
 
+	/**
+	 * Called by the kernel when the application is paused, for example when an Android app goes into the background.
+	 * The process may be killed at any time after this without any further warning, so a state that wants to survive
+	 * that must save itself here.
+	 */
+	public void pause() {
+	}
+
+	/**
+	 * Called by the kernel when the application is resumed after being paused.
+	 */
+	public void resume() {
+	}
+
+	/**
+	 * Returns true if the state only changes in response to input. While a static state is current the kernel stops
+	 * drawing continuously, and only draws when there is input, when the display is resized, or when something calls
+	 * {@link Kernel#invalidate()}.
+	 * 
+	 * @return true if the state is static.
+	 */
+	public boolean isStatic() {
+		return false;
+	}
+
 	/**
 	 * Called by the kernel to ask the state to update itself.
 	 */
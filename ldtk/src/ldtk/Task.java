@@ -0,0 +1,86 @@
+package ldtk;
+
+/**
+ * A piece of CPU-bound work that runs on one of the kernel's worker threads and hands its result back to the render
+ * thread. call() runs on a worker and mustn't touch libGDX or anything that the render thread is using. done() or
+ * failed() is then called on the render thread, just before the current state is next updated.
+ *
+ * @param <T> the type of the result.
+ */
+public abstract class Task<T> {
+
+	State owner;
+	long submitTime;
+	long startTime;
+	long endTime;
+	private volatile boolean isCancelled;
+	private T result;
+	private Exception exception;
+
+	/**
+	 * Does the work. Runs on a worker thread.
+	 *
+	 * @return the result.
+	 * @throws Exception if the work fails.
+	 */
+	protected abstract T call() throws Exception;
+
+	/**
+	 * Called on the render thread with the result if call() succeeded and the task wasn't cancelled.
+	 *
+	 * @param result the result.
+	 */
+	protected void done(T result) {
+	}
+
+	/**
+	 * Called on the render thread if call() threw an exception and the task wasn't cancelled.
+	 *
+	 * @param e the exception.
+	 */
+	protected void failed(Exception e) {
+	}
+
+	/**
+	 * Cancels the task. If it hasn't started then it never will, and if it has then its result is thrown away. Either
+	 * way, neither done() nor failed() will be called.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Called by a worker thread to run the task.
+	 */
+	void execute() {
+		startTime = System.nanoTime();
+		if (!isCancelled) {
+			try {
+				result = call();
+			}
+			catch (Exception e) {
+				exception = e;
+			}
+		}
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Called on the render thread to hand over the result.
+	 */
+	void deliver() {
+		if (isCancelled) {
+			return;
+		}
+		if (exception != null) {
+			failed(exception);
+		}
+		else {
+			done(result);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package ldtk;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a task at a fixed rate on its own thread, so that a simulation can tick independently of the frame rate. Like
+ * the kernel's fixed timestep it catches up if it falls behind, but only up to a point, after which it drops the time
+ * that it can't make up.
+ */
+public class TickThread implements Runnable {
+
+	private final Runnable task;
+	private final long tickNanos;
+	private final int maxSubsteps;
+	private volatile boolean isRunning;
+	private Thread thread;
+
+	/**
+	 * Creates a tick thread. It doesn't run until it is started.
+	 *
+	 * @param name the name of the thread.
+	 * @param task the task to run on every tick.
+	 * @param ticksPerSecond the number of ticks per second.
+	 * @param maxSubsteps the maximum number of ticks to run back to back when catching up.
+	 */
+	public TickThread(String name, Runnable task, float ticksPerSecond, int maxSubsteps) {
+		this.task = task;
+		this.tickNanos = (long) (1000000000L / ticksPerSecond);
+		this.maxSubsteps = maxSubsteps;
+		this.thread = new Thread(this, name);
+	}
+
+	/**
+	 * Returns the length of a tick.
+	 *
+	 * @return the tick length in nanoseconds.
+	 */
+	public long tickNanos() {
+		return tickNanos;
+	}
+
+	/**
+	 * Starts ticking.
+	 */
+	public void start() {
+		isRunning = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops ticking and waits for the tick in progress, if any, to finish. Once this returns, everything that the task
+	 * did is visible to the calling thread.
+	 */
+	public void stop() {
+		isRunning = false;
+		LockSupport.unpark(thread);
+		boolean isInterrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+		// A thread can only be started once, so get a new one ready in case we're restarted.
+		thread = new Thread(this, thread.getName());
+	}
+
+	/**
+	 * Returns true if the thread is ticking.
+	 *
+	 * @return true if the thread is running.
+	 */
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	@Override
+	public void run() {
+		long nextTick = System.nanoTime();
+		while (isRunning) {
+			long now = System.nanoTime();
+			if (now - nextTick >= maxSubsteps * tickNanos) {
+				// We've fallen too far behind, so drop the time that we can't catch up on.
+				nextTick = now;
+			}
+			if (now - nextTick >= 0) {
+				task.run();
+				nextTick += tickNanos;
+			}
+			else {
+				LockSupport.parkNanos(nextTick - now);
+			}
+		}
+	}
+}
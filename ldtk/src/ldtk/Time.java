@@ -5,9 +5,41 @@ public class Time {
 	 * The time in seconds since the last tick.
 	 */
 	public float delta;
-	
+
 	/**
-	 * The time, in seconds, that the kernel has been running.
+	 * The time, in seconds, that the kernel has been running, accumulated as a float. It's fine for short intervals,
+	 * but after a few hours it only changes in steps of a millisecond or so. Use {@link #seconds} for anything that
+	 * has to stay smooth however long the program runs, such as animation.
 	 */
 	public float time;
+
+	/**
+	 * The time, in nanoseconds, that the kernel has been running. This is an exact count of the ticks' lengths, so it
+	 * never drifts or loses precision.
+	 */
+	public long nanos;
+
+	/**
+	 * The time, in seconds, that the kernel has been running, derived from {@link #nanos}.
+	 */
+	public double seconds;
+
+	/**
+	 * How far, as a fraction of a tick, the kernel's clock is ahead of the last tick. Drawing code uses this to
+	 * interpolate between the previous and the current tick. It is always 1 when the kernel isn't using a fixed
+	 * timestep.
+	 */
+	public float alpha = 1.0f;
+
+	/**
+	 * Advances the clock by one tick.
+	 *
+	 * @param deltaNanos the length of the tick in nanoseconds.
+	 */
+	public void advance(long deltaNanos) {
+		nanos += deltaNanos;
+		seconds = nanos / 1000000000.0;
+		delta = deltaNanos / 1000000000.0f;
+		time += delta;
+	}
 }
@@ -0,0 +1,37 @@
+package ldtk;
+
+import com.badlogic.gdx.InputAdapter;
+
+/**
+ * Latches touches so that they are seen by exactly one tick. libGDX's own justTouched() is tied to the frame rather
+ * than the tick, so with a fixed timestep a touch would be seen by every tick in a frame, or by none at all if the
+ * frame didn't run a tick.
+ */
+public class Touches extends InputAdapter {
+
+	private boolean isPending;
+	private boolean justTouched;
+
+	/**
+	 * Returns true if the screen was touched since the previous tick.
+	 *
+	 * @return true if the screen was just touched.
+	 */
+	public boolean justTouched() {
+		return justTouched;
+	}
+
+	/**
+	 * Called by the kernel at the start of each tick to make any pending touch visible to that tick only.
+	 */
+	void latch() {
+		justTouched = isPending;
+		isPending = false;
+	}
+
+	@Override
+	public boolean touchDown(int screenX, int screenY, int pointer, int button) {
+		isPending = true;
+		return false;
+	}
+}
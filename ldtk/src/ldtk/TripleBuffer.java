@@ -0,0 +1,77 @@
+package ldtk;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands objects from one producer thread to one consumer thread without locking or allocating. There are three
+ * buffers: the producer writes into the back buffer, the consumer reads from the front buffer, and the middle buffer
+ * holds the most recently published one. Publishing and acquiring each swap a buffer with the middle one atomically,
+ * so neither thread ever waits for the other, and the consumer always sees the latest complete buffer. Buffers that
+ * the consumer doesn't get around to reading are simply overwritten.
+ *
+ * @param <T> the type of the buffers.
+ */
+public class TripleBuffer<T> {
+
+	private static final int INDEX_MASK = 3;
+	private static final int IS_FRESH = 4;
+
+	private final Object[] buffers;
+	private final AtomicInteger middle;
+	private int back;
+	private int front;
+
+	/**
+	 * Creates a triple buffer. The three buffers must be distinct.
+	 *
+	 * @param first the initial front buffer.
+	 * @param second the initial middle buffer.
+	 * @param third the initial back buffer.
+	 */
+	public TripleBuffer(T first, T second, T third) {
+		buffers = new Object[] { first, second, third };
+		front = 0;
+		middle = new AtomicInteger(1);
+		back = 2;
+	}
+
+	/**
+	 * Returns the buffer that the producer should write into next. Only the producer may call this.
+	 *
+	 * @return the back buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T back() {
+		return (T) buffers[back];
+	}
+
+	/**
+	 * Publishes the back buffer, making it the one that the consumer will see next. Only the producer may call this.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | IS_FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Returns true if something has been published that the consumer hasn't acquired yet.
+	 *
+	 * @return true if there is a fresh buffer.
+	 */
+	public boolean isFresh() {
+		return (middle.get() & IS_FRESH) != 0;
+	}
+
+	/**
+	 * Returns the most recently published buffer. The consumer may read it until its next call to acquire(). Only the
+	 * consumer may call this.
+	 *
+	 * @return the front buffer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if (isFresh()) {
+			front = middle.getAndSet(front) & INDEX_MASK;
+		}
+		return (T) buffers[front];
+	}
+}
@@ -0,0 +1,212 @@
+package ldtk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * A small pool of worker threads for CPU-bound tasks. The queue of waiting tasks is bounded, so a state that submits
+ * work faster than it can be done finds out rather than piling up work. Finished tasks are handed back to the render
+ * thread by the kernel at the start of each frame, before the current state is updated. Tasks belong to the state
+ * that submitted them, and are cancelled when that state exits. Tasks can be submitted from any thread.
+ */
+public class Workers {
+
+	private static final String TAG = "Workers";
+
+	private final ThreadPoolExecutor executor;
+	private final ArrayBlockingQueue<Runnable> queue;
+	private final ConcurrentLinkedQueue<Task<?>> finished = new ConcurrentLinkedQueue<Task<?>>();
+	private final List<Task<?>> running = new ArrayList<Task<?>>();
+	private int maxQueueDepth;
+	private int submitted;
+	private int rejected;
+	private int delivered;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+	private long totalRunNanos;
+
+	/**
+	 * Creates a worker pool.
+	 *
+	 * @param threads the number of worker threads.
+	 * @param capacity the maximum number of tasks that can be waiting to run.
+	 */
+	public Workers(int threads, int capacity) {
+		queue = new ArrayBlockingQueue<Runnable>(capacity);
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, queue, new ThreadFactory() {
+			private int count;
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Worker " + (++count));
+				// Workers must never hold up the render thread or stop the process from exiting.
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Submits a task that belongs to no state, so it is never cancelled automatically.
+	 *
+	 * @param task the task.
+	 * @return true if the task was queued, or false if the queue is full.
+	 */
+	public boolean submit(Task<?> task) {
+		return submit(null, task);
+	}
+
+	/**
+	 * Submits a task on behalf of a state.
+	 *
+	 * @param owner the state that the task belongs to, or null.
+	 * @param task the task.
+	 * @return true if the task was queued, or false if the queue is full.
+	 */
+	public synchronized boolean submit(State owner, final Task<?> task) {
+		task.owner = owner;
+		task.submitTime = System.nanoTime();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					task.execute();
+					finished.add(task);
+					// Make sure that there's a frame to deliver the result in, even if nothing is being drawn.
+					Kernel.invalidate();
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			rejected++;
+			return false;
+		}
+		running.add(task);
+		submitted++;
+		maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+		return true;
+	}
+
+	/**
+	 * Cancels every unfinished task that belongs to a state.
+	 *
+	 * @param owner the state.
+	 */
+	public synchronized void cancelAll(State owner) {
+		for (int i = 0, n = running.size(); i < n; i++) {
+			Task<?> task = running.get(i);
+			if (task.owner == owner) {
+				task.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Hands finished tasks back to their owners. Called by the kernel on the render thread.
+	 */
+	void deliver() {
+		Task<?> task;
+		while ((task = finished.poll()) != null) {
+			synchronized (this) {
+				running.remove(task);
+				long latency = task.endTime - task.submitTime;
+				totalLatencyNanos += latency;
+				maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+				totalRunNanos += task.endTime - task.startTime;
+				delivered++;
+			}
+			try {
+				task.deliver();
+			}
+			catch (RuntimeException e) {
+				Gdx.app.error(TAG, "Task delivery failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Stops the worker threads. Tasks that haven't started are dropped.
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the number of tasks waiting for a worker.
+	 *
+	 * @return the queue depth.
+	 */
+	public int queueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the most tasks that have ever been waiting for a worker at once.
+	 *
+	 * @return the maximum queue depth.
+	 */
+	public int maxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Returns the number of tasks that were turned away because the queue was full.
+	 *
+	 * @return the number of rejected tasks.
+	 */
+	public int rejected() {
+		return rejected;
+	}
+
+	/**
+	 * Returns the number of tasks that have been handed back to the render thread, including cancelled ones.
+	 *
+	 * @return the number of delivered tasks.
+	 */
+	public int delivered() {
+		return delivered;
+	}
+
+	/**
+	 * Returns the mean time from a task being submitted to it finishing on its worker.
+	 *
+	 * @return the mean latency in nanoseconds.
+	 */
+	public long meanLatencyNanos() {
+		return (delivered == 0) ? 0 : totalLatencyNanos / delivered;
+	}
+
+	/**
+	 * Returns the longest time from a task being submitted to it finishing on its worker.
+	 *
+	 * @return the maximum latency in nanoseconds.
+	 */
+	public long maxLatencyNanos() {
+		return maxLatencyNanos;
+	}
+
+	/**
+	 * Returns the mean time that a task spent running on its worker.
+	 *
+	 * @return the mean run time in nanoseconds.
+	 */
+	public long meanRunNanos() {
+		return (delivered == 0) ? 0 : totalRunNanos / delivered;
+	}
+
+	@Override
+	public String toString() {
+		return submitted + " submitted, " + rejected + " rejected, " + delivered + " delivered, queue depth " +
+				queueDepth() + " (max " + maxQueueDepth + "), latency " + (meanLatencyNanos() / 1000) + "us mean, " +
+				(maxLatencyNanos / 1000) + "us max";
+	}
+}